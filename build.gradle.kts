@@ -15,6 +15,22 @@ kotlin {
     compilerOptions {
         jvmTarget = org.jetbrains.kotlin.gradle.dsl.JvmTarget.JVM_17
     }
+    target.compilations {
+        val main by getting
+        // Vector API reductions, compiled against the incubator module and loaded only where it is resolved
+        val vector by creating {
+            associateWith(main)
+            compileTaskProvider.configure {
+                compilerOptions.freeCompilerArgs.add("-Xadd-modules=jdk.incubator.vector")
+            }
+        }
+    }
+}
+
+val vectorOutput = kotlin.target.compilations["vector"].output.allOutputs
+
+tasks.jar {
+    from(vectorOutput)
 }
 
 mavenPublishing {
@@ -63,4 +79,6 @@ dependencies {
 
 tasks.test {
     useJUnitPlatform()
+    classpath += vectorOutput
+    jvmArgs("--add-modules=jdk.incubator.vector")
 }
\ No newline at end of file
@@ -0,0 +1,266 @@
+package linq
+
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
+
+/**
+ * Iterates a sequence whose elements become available asynchronously.
+ */
+interface AsyncIterator<out T> {
+    /**
+     * Advances to the next element.
+     * @return A future completed with `true` once [current] holds the next element, or with `false` at the end.
+     */
+    fun moveNext(): CompletableFuture<Boolean>
+
+    /**
+     * The element reached by the last successful [moveNext].
+     */
+    val current: T
+}
+
+/**
+ * A sequence whose elements become available asynchronously, queried by chaining [CompletableFuture]s instead of
+ * blocking a thread per element. Every iteration starts over from the source, like [Enumerable].
+ */
+class AsyncEnumerable<TSource> internal constructor(private val source: () -> AsyncIterator<TSource>) {
+    fun iterator(): AsyncIterator<TSource> = source()
+
+    /**
+     * Filters a sequence of values based on a predicate.
+     * @param [predicate] A function to test each element for a condition.
+     * @return An [AsyncEnumerable] that contains elements from the input sequence that satisfy the condition.
+     */
+    fun where(predicate: (TSource) -> Boolean): AsyncEnumerable<TSource> = AsyncEnumerable {
+        val iterator = source()
+        object : AsyncIterator<TSource> {
+            override val current: TSource get() = iterator.current
+
+            override fun moveNext(): CompletableFuture<Boolean> = advance(iterator) { predicate(it) }
+        }
+    }
+
+    /**
+     * Projects each element of a sequence into a new form.
+     * @param [selector] A transform function to apply to each element.
+     * @return An [AsyncEnumerable] whose elements are the result of invoking the transform function on each element.
+     */
+    fun <TResult> select(selector: (TSource) -> TResult): AsyncEnumerable<TResult> = AsyncEnumerable {
+        val iterator = source()
+        object : AsyncIterator<TResult> {
+            private var value: Any? = null
+
+            @Suppress("UNCHECKED_CAST")
+            override val current: TResult get() = value as TResult
+
+            override fun moveNext(): CompletableFuture<Boolean> = iterator.moveNext().thenApply { moved ->
+                if (moved) value = selector(iterator.current)
+                moved
+            }
+        }
+    }
+
+    /**
+     * Projects each element of a sequence into a new form with an asynchronous transform. Projections run one at a
+     * time: the next element is requested only after the previous projection completes.
+     * @param [selector] An asynchronous transform function to apply to each element.
+     * @return An [AsyncEnumerable] whose elements are the results of the futures returned by [selector].
+     */
+    fun <TResult> selectAwait(selector: (TSource) -> CompletableFuture<TResult>): AsyncEnumerable<TResult> =
+        AsyncEnumerable {
+            val iterator = source()
+            object : AsyncIterator<TResult> {
+                private var value: Any? = null
+
+                @Suppress("UNCHECKED_CAST")
+                override val current: TResult get() = value as TResult
+
+                override fun moveNext(): CompletableFuture<Boolean> = iterator.moveNext().thenCompose { moved ->
+                    if (!moved) CompletableFuture.completedFuture(false)
+                    else selector(iterator.current).thenApply {
+                        value = it
+                        true
+                    }
+                }
+            }
+        }
+
+    /**
+     * Projects each element of a sequence to an [Iterable] and flattens the resulting sequences into one sequence,
+     * for example the items of asynchronously fetched pages.
+     * @param [selector] A transform function to apply to each element.
+     * @return An [AsyncEnumerable] whose elements are the result of invoking the one-to-many transform function on
+     * each element of the input sequence.
+     */
+    fun <TResult> selectMany(selector: (TSource) -> Iterable<TResult>): AsyncEnumerable<TResult> = AsyncEnumerable {
+        val iterator = source()
+        object : AsyncIterator<TResult> {
+            private var inner: Iterator<TResult> = emptyList<TResult>().iterator()
+            private var value: Any? = null
+
+            @Suppress("UNCHECKED_CAST")
+            override val current: TResult get() = value as TResult
+
+            override fun moveNext(): CompletableFuture<Boolean> {
+                val moved = if (inner.hasNext()) CompletableFuture.completedFuture(true)
+                else advance(iterator) {
+                    inner = selector(it).iterator()
+                    inner.hasNext()
+                }
+                return moved.thenApply {
+                    if (it) value = inner.next()
+                    it
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a specified number of contiguous elements from the start of a sequence. The source is not advanced
+     * past the last element returned, so no further pages are fetched.
+     * @param [count] The number of elements to return.
+     * @return An [AsyncEnumerable] that contains the specified number of elements from the start of the input
+     * sequence.
+     */
+    fun take(count: Int): AsyncEnumerable<TSource> = AsyncEnumerable {
+        val iterator = source()
+        object : AsyncIterator<TSource> {
+            private var taken = 0
+
+            override val current: TSource get() = iterator.current
+
+            override fun moveNext(): CompletableFuture<Boolean> =
+                if (taken >= count) CompletableFuture.completedFuture(false)
+                else iterator.moveNext().thenApply {
+                    if (it) taken++
+                    it
+                }
+        }
+    }
+
+    /**
+     * Applies an accumulator function over a sequence. The specified seed value is used as the initial accumulator
+     * value.
+     * @param [seed] The initial accumulator value.
+     * @param [func] An accumulator function to be invoked on each element.
+     * @return A future of the final accumulator value.
+     */
+    fun <TAccumulate> aggregate(
+        seed: TAccumulate,
+        func: (TAccumulate, TSource) -> TAccumulate
+    ): CompletableFuture<TAccumulate> {
+        var accumulator = seed
+        return advance(source()) {
+            accumulator = func(accumulator, it)
+            false
+        }.thenApply { accumulator }
+    }
+
+    /**
+     * Collects the elements of a sequence into a list.
+     * @return A future of a [List] that contains the elements of the sequence.
+     */
+    fun toListAsync(): CompletableFuture<List<TSource>> {
+        val list = ArrayList<TSource>()
+        return advance(source()) {
+            list.add(it)
+            false
+        }.thenApply { list }
+    }
+
+    /**
+     * Returns the first element of a sequence.
+     * @return A future of the first element, completed exceptionally with [NoSuchElementException] if the sequence
+     * is empty.
+     */
+    fun firstAsync(): CompletableFuture<TSource> {
+        val iterator = source()
+        return iterator.moveNext().thenApply {
+            if (!it) throw NoSuchElementException("Sequence contains no elements.")
+            iterator.current
+        }
+    }
+
+    /**
+     * Converts the sequence into a synchronous [Enumerable] that blocks on each element.
+     * @return An [Enumerable] that contains the elements of the sequence.
+     */
+    fun toEnumerable(): Enumerable<TSource> = Enumerable(Sequence {
+        val iterator = source()
+        object : AbstractIterator<TSource>() {
+            override fun computeNext() {
+                val moved = try {
+                    iterator.moveNext().join()
+                } catch (e: CompletionException) {
+                    throw e.cause ?: e
+                }
+                if (moved) setNext(iterator.current) else done()
+            }
+        }
+    })
+}
+
+/**
+ * Advances [iterator] until [accept] returns `true` for the current element or the sequence ends. Elements that are
+ * already available are consumed in a loop rather than by chaining futures, so long synchronous runs cannot
+ * overflow the stack.
+ * @return A future completed with `true` if an element was accepted, or with `false` at the end.
+ */
+internal fun <T> advance(iterator: AsyncIterator<T>, accept: (T) -> Boolean): CompletableFuture<Boolean> {
+    val result = CompletableFuture<Boolean>()
+    pump(iterator, accept, result)
+    return result
+}
+
+private fun <T> pump(iterator: AsyncIterator<T>, accept: (T) -> Boolean, result: CompletableFuture<Boolean>) {
+    try {
+        while (true) {
+            val moved = iterator.moveNext()
+            if (!moved.isDone) {
+                moved.whenComplete { value, error ->
+                    when {
+                        error != null -> result.completeExceptionally(unwrap(error))
+                        !value -> result.complete(false)
+                        else -> try {
+                            if (accept(iterator.current)) result.complete(true) else pump(iterator, accept, result)
+                        } catch (e: Throwable) {
+                            result.completeExceptionally(e)
+                        }
+                    }
+                }
+                return
+            }
+            if (!moved.join()) {
+                result.complete(false)
+                return
+            }
+            if (accept(iterator.current)) {
+                result.complete(true)
+                return
+            }
+        }
+    } catch (e: Throwable) {
+        result.completeExceptionally(unwrap(e))
+    }
+}
+
+private fun unwrap(error: Throwable): Throwable =
+    if (error is CompletionException) error.cause ?: error else error
+
+internal fun <TSource> Sequence<TSource>.asyncIterator(): AsyncIterator<TSource> {
+    val iterator = iterator()
+    return object : AsyncIterator<TSource> {
+        private var value: Any? = null
+
+        @Suppress("UNCHECKED_CAST")
+        override val current: TSource get() = value as TSource
+
+        override fun moveNext(): CompletableFuture<Boolean> = try {
+            val moved = iterator.hasNext()
+            if (moved) value = iterator.next()
+            CompletableFuture.completedFuture(moved)
+        } catch (e: Throwable) {
+            CompletableFuture.failedFuture(e)
+        }
+    }
+}
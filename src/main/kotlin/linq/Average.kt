@@ -1,6 +1,7 @@
 package linq
 
 import java.math.BigDecimal
+import java.math.MathContext
 
 fun Sequence<BigDecimal>.average(): BigDecimal {
     var sum: BigDecimal = BigDecimal.ZERO
@@ -10,4 +11,14 @@ fun Sequence<BigDecimal>.average(): BigDecimal {
         count = Math.addExact(count, 1)
     }
     return sum / BigDecimal(count)
-}
\ No newline at end of file
+}
+
+fun Sequence<BigDecimal>.average(mathContext: MathContext): BigDecimal {
+    var sum: BigDecimal = BigDecimal.ZERO
+    var count = 0
+    for (element in this) {
+        sum += element
+        count = Math.addExact(count, 1)
+    }
+    return sum.divide(BigDecimal(count), mathContext)
+}
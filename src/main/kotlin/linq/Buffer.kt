@@ -0,0 +1,33 @@
+package linq
+
+import java.time.Duration
+import java.util.concurrent.Executor
+
+fun <TSource> Sequence<TSource>.buffer(
+    maxSize: Int,
+    maxDelay: Duration,
+    reuse: Boolean,
+    executor: Executor
+): Sequence<List<TSource>> {
+    require(maxSize > 0) { "maxSize must be positive" }
+    require(!maxDelay.isNegative) { "maxDelay must not be negative" }
+    val delay = maxDelay.toNanos()
+    val source = this
+    return sequence {
+        // the source is pulled on another thread so that a slow source cannot hold a batch past its deadline
+        val iterator = PrefetchIterator(source, maxSize, executor)
+        var batch = ArrayList<TSource>(maxSize)
+        while (iterator.hasNext()) {
+            batch.add(iterator.next())
+            // the first element of a batch starts its clock
+            val deadline = System.nanoTime() + delay
+            while (batch.size < maxSize) {
+                val remaining = deadline - System.nanoTime()
+                if (remaining <= 0 || !iterator.await(remaining) || !iterator.hasNext()) break
+                batch.add(iterator.next())
+            }
+            yield(batch)
+            if (reuse) batch.clear() else batch = ArrayList(maxSize)
+        }
+    }
+}
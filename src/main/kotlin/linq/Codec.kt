@@ -0,0 +1,64 @@
+package linq
+
+import java.nio.ByteBuffer
+import java.nio.charset.StandardCharsets
+
+/**
+ * Converts values to and from their binary form for on-disk structures such as [LookUpSnapshot].
+ */
+interface Codec<T> {
+    /**
+     * Encodes a non-null value.
+     */
+    fun encode(value: T): ByteArray
+
+    /**
+     * Decodes a value from a buffer that spans exactly its encoded bytes, starting at position zero.
+     */
+    fun decode(buffer: ByteBuffer): T
+}
+
+/**
+ * Codecs for common value types.
+ */
+object Codecs {
+    @JvmField
+    val INT: Codec<Int> = object : Codec<Int> {
+        override fun encode(value: Int): ByteArray = ByteBuffer.allocate(4).putInt(value).array()
+
+        override fun decode(buffer: ByteBuffer): Int = buffer.getInt(0)
+    }
+
+    @JvmField
+    val LONG: Codec<Long> = object : Codec<Long> {
+        override fun encode(value: Long): ByteArray = ByteBuffer.allocate(8).putLong(value).array()
+
+        override fun decode(buffer: ByteBuffer): Long = buffer.getLong(0)
+    }
+
+    @JvmField
+    val DOUBLE: Codec<Double> = object : Codec<Double> {
+        override fun encode(value: Double): ByteArray = ByteBuffer.allocate(8).putDouble(value).array()
+
+        override fun decode(buffer: ByteBuffer): Double = buffer.getDouble(0)
+    }
+
+    @JvmField
+    val STRING: Codec<String> = object : Codec<String> {
+        override fun encode(value: String): ByteArray = value.toByteArray(StandardCharsets.UTF_8)
+
+        override fun decode(buffer: ByteBuffer): String {
+            if (buffer.hasArray()) {
+                return String(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining(), StandardCharsets.UTF_8)
+            }
+            return StandardCharsets.UTF_8.decode(buffer.duplicate()).toString()
+        }
+    }
+
+    @JvmField
+    val BYTES: Codec<ByteArray> = object : Codec<ByteArray> {
+        override fun encode(value: ByteArray): ByteArray = value
+
+        override fun decode(buffer: ByteBuffer): ByteArray = ByteArray(buffer.remaining()).also { buffer.duplicate().get(it) }
+    }
+}
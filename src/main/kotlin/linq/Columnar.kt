@@ -0,0 +1,412 @@
+package linq
+
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.charset.StandardCharsets
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+
+/**
+ * The storage type of a column.
+ */
+enum class ColumnType { INT, LONG, DOUBLE, STRING }
+
+/**
+ * Describes how the elements of a sequence are split into named, typed columns.
+ */
+class Schema<TSource> {
+    internal val columns = mutableListOf<SchemaColumn<TSource>>()
+
+    /**
+     * The column names, in declaration order.
+     */
+    val names: List<String> get() = columns.map { it.name }
+
+    private fun add(name: String, type: ColumnType, selector: (TSource) -> Any?): Schema<TSource> {
+        require(columns.none { it.name == name }) { "duplicate column: $name" }
+        columns.add(SchemaColumn(name, type, selector))
+        return this
+    }
+
+    fun intColumn(name: String, selector: (TSource) -> Int): Schema<TSource> = add(name, ColumnType.INT, selector)
+
+    fun longColumn(name: String, selector: (TSource) -> Long): Schema<TSource> = add(name, ColumnType.LONG, selector)
+
+    fun doubleColumn(name: String, selector: (TSource) -> Double): Schema<TSource> =
+        add(name, ColumnType.DOUBLE, selector)
+
+    fun stringColumn(name: String, selector: (TSource) -> String?): Schema<TSource> =
+        add(name, ColumnType.STRING, selector)
+}
+
+internal class SchemaColumn<TSource>(val name: String, val type: ColumnType, val selector: (TSource) -> Any?)
+
+private const val MAGIC = 0x4C51344A // "LQ4J"
+private const val VERSION = 1
+
+internal class ChunkMeta(val offset: Long, val length: Int, val min: Long, val max: Long)
+
+internal class BlockMeta(val rowCount: Int, val chunks: Array<ChunkMeta>)
+
+private class ColumnBuffer(val type: ColumnType, capacity: Int) {
+    val ints = if (type == ColumnType.INT) IntArray(capacity) else null
+    val longs = if (type == ColumnType.LONG) LongArray(capacity) else null
+    val doubles = if (type == ColumnType.DOUBLE) DoubleArray(capacity) else null
+    val strings = if (type == ColumnType.STRING) arrayOfNulls<ByteArray>(capacity) else null
+
+    fun set(index: Int, value: Any?) {
+        when (type) {
+            ColumnType.INT -> ints!![index] = value as Int
+            ColumnType.LONG -> longs!![index] = value as Long
+            ColumnType.DOUBLE -> doubles!![index] = value as Double
+            ColumnType.STRING -> strings!![index] = (value as String?)?.toByteArray(StandardCharsets.UTF_8)
+        }
+    }
+
+    fun encode(count: Int, channel: FileChannel): ChunkMeta {
+        val offset = channel.position()
+        var min = 0L
+        var max = 0L
+        val buffer: ByteBuffer
+        when (type) {
+            ColumnType.INT -> {
+                val values = ints!!
+                buffer = ByteBuffer.allocate(count * 4)
+                min = Long.MAX_VALUE
+                max = Long.MIN_VALUE
+                for (i in 0 until count) {
+                    buffer.putInt(values[i])
+                    min = minOf(min, values[i].toLong())
+                    max = maxOf(max, values[i].toLong())
+                }
+            }
+
+            ColumnType.LONG -> {
+                val values = longs!!
+                buffer = ByteBuffer.allocate(count * 8)
+                min = Long.MAX_VALUE
+                max = Long.MIN_VALUE
+                for (i in 0 until count) {
+                    buffer.putLong(values[i])
+                    min = minOf(min, values[i])
+                    max = maxOf(max, values[i])
+                }
+            }
+
+            ColumnType.DOUBLE -> {
+                val values = doubles!!
+                buffer = ByteBuffer.allocate(count * 8)
+                var low = Double.POSITIVE_INFINITY
+                var high = Double.NEGATIVE_INFINITY
+                var nan = false
+                for (i in 0 until count) {
+                    buffer.putDouble(values[i])
+                    if (values[i].isNaN()) nan = true
+                    else {
+                        low = minOf(low, values[i])
+                        high = maxOf(high, values[i])
+                    }
+                }
+                // a NaN never matches a range, but widen the zone map so the block is never wrongly skipped
+                if (nan) {
+                    low = Double.NEGATIVE_INFINITY
+                    high = Double.POSITIVE_INFINITY
+                }
+                min = low.toRawBits()
+                max = high.toRawBits()
+            }
+
+            ColumnType.STRING -> {
+                val values = strings!!
+                var bytes = 0
+                for (i in 0 until count) bytes += values[i]?.size ?: 0
+                // null flags, then end offsets, then the UTF-8 payload
+                buffer = ByteBuffer.allocate(count + count * 4 + bytes)
+                for (i in 0 until count) buffer.put(if (values[i] == null) 1 else 0)
+                var end = 0
+                for (i in 0 until count) {
+                    end += values[i]?.size ?: 0
+                    buffer.putInt(end)
+                }
+                for (i in 0 until count) values[i]?.let { buffer.put(it) }
+                values.fill(null, 0, count)
+            }
+        }
+        buffer.flip()
+        while (buffer.hasRemaining()) channel.write(buffer)
+        return ChunkMeta(offset, (channel.position() - offset).toInt(), min, max)
+    }
+}
+
+internal fun <TSource> Sequence<TSource>.writeColumnar(path: Path, schema: Schema<TSource>, blockSize: Int) {
+    require(blockSize > 0) { "blockSize must be positive" }
+    require(schema.columns.isNotEmpty()) { "schema has no columns" }
+    val columns = schema.columns.toList()
+    FileChannel.open(
+        path,
+        StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING,
+        StandardOpenOption.WRITE
+    ).use { channel ->
+        channel.write(ByteBuffer.allocate(8).putInt(MAGIC).putInt(VERSION).flip())
+        val buffers = columns.map { ColumnBuffer(it.type, blockSize) }
+        val blocks = mutableListOf<BlockMeta>()
+        var count = 0
+
+        fun flush() {
+            blocks.add(BlockMeta(count, Array(buffers.size) { buffers[it].encode(count, channel) }))
+            count = 0
+        }
+
+        for (element in this) {
+            for (c in columns.indices) {
+                buffers[c].set(count, columns[c].selector(element))
+            }
+            if (++count == blockSize) flush()
+        }
+        if (count > 0) flush()
+
+        val footer = ByteArrayOutputStream()
+        DataOutputStream(footer).use { out ->
+            out.writeInt(columns.size)
+            for (column in columns) {
+                out.writeUTF(column.name)
+                out.writeByte(column.type.ordinal)
+            }
+            out.writeInt(blocks.size)
+            for (block in blocks) {
+                out.writeInt(block.rowCount)
+                for (chunk in block.chunks) {
+                    out.writeLong(chunk.offset)
+                    out.writeInt(chunk.length)
+                    out.writeLong(chunk.min)
+                    out.writeLong(chunk.max)
+                }
+            }
+        }
+        val bytes = footer.toByteArray()
+        val tail = ByteBuffer.allocate(bytes.size + 8).put(bytes).putInt(bytes.size).putInt(MAGIC).flip()
+        while (tail.hasRemaining()) channel.write(tail)
+    }
+}
+
+private class RangeFilter(val column: Int, val min: Long, val max: Long, val isDouble: Boolean) {
+    val low = if (isDouble) Double.fromBits(min) else 0.0
+    val high = if (isDouble) Double.fromBits(max) else 0.0
+
+    fun overlaps(chunk: ChunkMeta): Boolean =
+        if (isDouble) Double.fromBits(chunk.max) >= low && Double.fromBits(chunk.min) <= high
+        else chunk.max >= min && chunk.min <= max
+}
+
+/**
+ * A columnar file written by [Enumerable.writeTo], opened through a read-only memory mapping.
+ *
+ * Views are immutable: [select] and the `where` methods return new views over the same mapping.
+ * Range filters are checked against the per-block min/max of the column first, so blocks that cannot match
+ * are skipped without touching their data, and only the projected and filtered columns are ever read.
+ */
+class ColumnarFile private constructor(
+    private val file: MappedFile,
+    private val names: List<String>,
+    private val types: List<ColumnType>,
+    private val blocks: List<BlockMeta>,
+    private val projection: IntArray,
+    private val filters: List<RangeFilter>
+) {
+    /**
+     * The projected column names, in output order.
+     */
+    val columns: List<String> get() = projection.map { names[it] }
+
+    /**
+     * The total number of rows stored in the file, before any filter.
+     */
+    val rowCount: Long get() = blocks.sumOf { it.rowCount.toLong() }
+
+    /**
+     * The number of blocks stored in the file.
+     */
+    val blockCount: Int get() = blocks.size
+
+    private fun column(name: String): Int {
+        val index = names.indexOf(name)
+        if (index < 0) throw NoSuchElementException("no column named $name")
+        return index
+    }
+
+    /**
+     * Restricts the view to the specified columns.
+     * @param [columns] The column names to read, in output order.
+     * @return A view that reads only [columns].
+     * @throws [NoSuchElementException] A column does not exist.
+     */
+    fun select(vararg columns: String): ColumnarFile =
+        ColumnarFile(file, names, types, blocks, IntArray(columns.size) { column(columns[it]) }, filters)
+
+    private fun where(name: String, type: ColumnType, min: Long, max: Long): ColumnarFile {
+        val index = column(name)
+        require(types[index] == type) { "column $name is ${types[index]}, not $type" }
+        return ColumnarFile(
+            file, names, types, blocks, projection,
+            filters + RangeFilter(index, min, max, type == ColumnType.DOUBLE)
+        )
+    }
+
+    /**
+     * Filters rows on an [ColumnType.INT] column.
+     * @param [column] The column name.
+     * @param [min] The inclusive lower bound.
+     * @param [max] The inclusive upper bound.
+     * @return A view that only contains rows whose value is within the bounds.
+     * @throws [NoSuchElementException] The column does not exist.
+     * @throws [IllegalArgumentException] The column is not an [ColumnType.INT] column.
+     */
+    fun whereInt(column: String, min: Int, max: Int): ColumnarFile =
+        where(column, ColumnType.INT, min.toLong(), max.toLong())
+
+    /**
+     * Filters rows on a [ColumnType.LONG] column.
+     * @see [whereInt]
+     */
+    fun whereLong(column: String, min: Long, max: Long): ColumnarFile = where(column, ColumnType.LONG, min, max)
+
+    /**
+     * Filters rows on a [ColumnType.DOUBLE] column.
+     * @see [whereInt]
+     */
+    fun whereDouble(column: String, min: Double, max: Double): ColumnarFile =
+        where(column, ColumnType.DOUBLE, min.toRawBits(), max.toRawBits())
+
+    /**
+     * Enumerates the rows of the view.
+     * @return An [Enumerable] of a reused [ColumnarRow], valid until the next element is requested.
+     */
+    fun rows(): Enumerable<ColumnarRow> = Enumerable(sequence {
+        val row = ColumnarRow(projection.map { names[it] }, projection.map { types[it] })
+        val filterData = arrayOfNulls<ByteBuffer>(filters.size)
+        for (block in blocks) {
+            if (filters.any { !it.overlaps(block.chunks[it.column]) }) continue
+            for (i in filters.indices) {
+                val chunk = block.chunks[filters[i].column]
+                filterData[i] = file.slice(chunk.offset, chunk.length)
+            }
+            for (i in projection.indices) {
+                val chunk = block.chunks[projection[i]]
+                row.data[i] = file.slice(chunk.offset, chunk.length)
+            }
+            row.rowCount = block.rowCount
+            for (r in 0 until block.rowCount) {
+                if (!matches(filterData, r)) continue
+                row.index = r
+                yield(row)
+            }
+        }
+    })
+
+    private fun matches(data: Array<ByteBuffer?>, row: Int): Boolean {
+        for (i in filters.indices) {
+            val filter = filters[i]
+            val buffer = data[i]!!
+            val ok = when (types[filter.column]) {
+                ColumnType.INT -> buffer.getInt(row * 4).toLong().let { it >= filter.min && it <= filter.max }
+                ColumnType.LONG -> buffer.getLong(row * 8).let { it >= filter.min && it <= filter.max }
+                else -> buffer.getDouble(row * 8).let { it >= filter.low && it <= filter.high }
+            }
+            if (!ok) return false
+        }
+        return true
+    }
+
+    companion object {
+        /**
+         * Opens a file written by [Enumerable.writeTo].
+         * @param [path] The file to open.
+         * @return A view over every column of the file.
+         * @throws [IOException] The file is not a columnar file or cannot be read.
+         */
+        @JvmStatic
+        fun open(path: Path): ColumnarFile {
+            val file = MappedFile(path)
+            if (file.size < 16 || file.slice(0, 4).getInt(0) != MAGIC || file.slice(file.size - 4, 4).getInt(0) != MAGIC) {
+                throw IOException("not a columnar file: $path")
+            }
+            val version = file.slice(4, 4).getInt(0)
+            if (version != VERSION) throw IOException("unsupported columnar file version: $version")
+            val footerLength = file.slice(file.size - 8, 4).getInt(0)
+            val footer = ByteArray(footerLength)
+            file.slice(file.size - 8 - footerLength, footerLength).get(footer)
+            DataInputStream(ByteArrayInputStream(footer)).use { input ->
+                val columnCount = input.readInt()
+                val names = ArrayList<String>(columnCount)
+                val types = ArrayList<ColumnType>(columnCount)
+                repeat(columnCount) {
+                    names.add(input.readUTF())
+                    types.add(ColumnType.entries[input.readByte().toInt()])
+                }
+                val blocks = List(input.readInt()) {
+                    val rowCount = input.readInt()
+                    BlockMeta(rowCount, Array(columnCount) {
+                        ChunkMeta(input.readLong(), input.readInt(), input.readLong(), input.readLong())
+                    })
+                }
+                return ColumnarFile(file, names, types, blocks, IntArray(columnCount) { it }, emptyList())
+            }
+        }
+    }
+}
+
+/**
+ * A reusable view over the current row of a [ColumnarFile]. Columns are addressed by their position in the projection.
+ */
+class ColumnarRow internal constructor(
+    /**
+     * The projected column names.
+     */
+    val columns: List<String>,
+    private val types: List<ColumnType>
+) {
+    internal val data = arrayOfNulls<ByteBuffer>(columns.size)
+    internal var rowCount = 0
+    internal var index = 0
+
+    private fun buffer(column: Int, type: ColumnType): ByteBuffer {
+        if (types[column] != type) throw IllegalArgumentException("column ${columns[column]} is ${types[column]}, not $type")
+        return data[column]!!
+    }
+
+    fun getInt(column: Int): Int = buffer(column, ColumnType.INT).getInt(index * 4)
+
+    fun getLong(column: Int): Long = buffer(column, ColumnType.LONG).getLong(index * 8)
+
+    fun getDouble(column: Int): Double = buffer(column, ColumnType.DOUBLE).getDouble(index * 8)
+
+    fun getString(column: Int): String? {
+        val buffer = buffer(column, ColumnType.STRING)
+        if (buffer.get(index) != 0.toByte()) return null
+        val start = if (index == 0) 0 else buffer.getInt(rowCount + (index - 1) * 4)
+        val end = buffer.getInt(rowCount + index * 4)
+        val bytes = ByteArray(end - start)
+        buffer.duplicate().position(rowCount * 5 + start).get(bytes)
+        return String(bytes, StandardCharsets.UTF_8)
+    }
+
+    fun getInt(column: String): Int = getInt(indexOf(column))
+
+    fun getLong(column: String): Long = getLong(indexOf(column))
+
+    fun getDouble(column: String): Double = getDouble(indexOf(column))
+
+    fun getString(column: String): String? = getString(indexOf(column))
+
+    private fun indexOf(column: String): Int {
+        val index = columns.indexOf(column)
+        if (index < 0) throw NoSuchElementException("column $column is not projected")
+        return index
+    }
+}
@@ -0,0 +1,35 @@
+package linq
+
+import java.lang.ref.Cleaner
+import java.util.concurrent.Executor
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+
+/**
+ * Threads shared by the operators that move work off the consuming thread.
+ */
+internal object Concurrency {
+    /**
+     * Starts a virtual thread per task where the runtime supports them, and otherwise falls back to a cached pool
+     * of daemon threads so that abandoned pipelines never keep the JVM alive.
+     */
+    val executor: Executor by lazy {
+        try {
+            Executors::class.java.getMethod("newVirtualThreadPerTaskExecutor").invoke(null) as ExecutorService
+        } catch (e: ReflectiveOperationException) {
+            Executors.newCachedThreadPool { runnable ->
+                Thread(runnable, "linq-worker").apply { isDaemon = true }
+            }
+        }
+    }
+
+    /**
+     * Stops the background work of iterators that were abandoned without being closed.
+     */
+    val cleaner: Cleaner by lazy { Cleaner.create() }
+}
+
+/**
+ * An exception handed from a background thread to the consuming thread, to be rethrown there.
+ */
+internal class Failure(val error: Throwable)
@@ -0,0 +1,123 @@
+package linq
+
+import java.math.BigDecimal
+import java.math.BigInteger
+import java.math.MathContext
+
+/**
+ * A running sum of decimal values at a fixed [scale], such as amounts of money in cents. Values are kept as a
+ * `long` count of units of `10^-scale`, and the sum only moves to a [BigInteger] once it overflows that `long`,
+ * so no intermediate [BigDecimal] sum is created per value. [add] still creates one short-lived [BigDecimal] for a
+ * value with fractional digits, to read its unscaled digits; [addUnscaled] allocates nothing.
+ *
+ * Sums built over separate partitions can be merged, and the result is exact regardless of the merge order.
+ */
+class DecimalSum(val scale: Int) {
+    private var unscaled = 0L
+    private var overflow: BigInteger? = null
+
+    /**
+     * The number of values added.
+     */
+    var count: Long = 0
+        private set
+
+    /**
+     * Adds a value given as a number of units of `10^-scale`, for example cents for a scale of 2.
+     * @param [unscaledValue] The value to add.
+     * @return This sum.
+     */
+    fun addUnscaled(unscaledValue: Long): DecimalSum {
+        val result = unscaled + unscaledValue
+        // the signs of both operands differ from the result's only when the addition overflowed
+        if ((unscaled xor result) and (unscaledValue xor result) < 0) {
+            overflow = (overflow ?: BigInteger.ZERO).add(BigInteger.valueOf(unscaled)).add(BigInteger.valueOf(unscaledValue))
+            unscaled = 0
+        } else {
+            unscaled = result
+        }
+        count++
+        return this
+    }
+
+    /**
+     * Adds a value.
+     * @param [value] The value to add.
+     * @return This sum.
+     * @throws [ArithmeticException] [value] has more fractional digits than [scale] allows.
+     */
+    fun add(value: BigDecimal): DecimalSum {
+        val digits = value.scale()
+        if (digits <= scale && value.precision() - digits + scale <= 18) {
+            // fits in a long once scaled: the common case for money columns. movePointRight keeps the compact
+            // representation, whereas unscaledValue() would inflate a BigInteger for every value with a fraction
+            val shifted = value.movePointRight(digits).longValueExact()
+            return addUnscaled(shifted * LONG_POWERS_OF_TEN[scale - digits])
+        }
+        val exact = value.setScale(scale).unscaledValue()
+        overflow = (overflow ?: BigInteger.ZERO).add(exact)
+        count++
+        return this
+    }
+
+    /**
+     * Merges another sum into this one.
+     * @param [other] The sum to merge; it is not modified.
+     * @return This sum.
+     * @throws [IllegalArgumentException] [other] has a different scale.
+     */
+    fun merge(other: DecimalSum): DecimalSum {
+        require(other.scale == scale) { "cannot merge sums of scale ${other.scale} into scale $scale" }
+        val count = count + other.count
+        addUnscaled(other.unscaled)
+        other.overflow?.let { overflow = (overflow ?: BigInteger.ZERO).add(it) }
+        this.count = count
+        return this
+    }
+
+    /**
+     * @return The exact sum of the values added, at [scale].
+     */
+    fun sum(): BigDecimal {
+        val total = overflow?.add(BigInteger.valueOf(unscaled)) ?: return BigDecimal.valueOf(unscaled, scale)
+        return BigDecimal(total, scale)
+    }
+
+    /**
+     * Computes the average of the values added.
+     * @param [mathContext] The precision and rounding of the quotient.
+     * @return The average, rounded according to [mathContext].
+     * @throws [ArithmeticException] No values were added.
+     */
+    fun average(mathContext: MathContext): BigDecimal {
+        if (count == 0L) throw ArithmeticException("Division by zero")
+        return sum().divide(BigDecimal.valueOf(count), mathContext)
+    }
+
+    private companion object {
+        val LONG_POWERS_OF_TEN = LongArray(19).also {
+            it[0] = 1
+            for (i in 1 until it.size) it[i] = it[i - 1] * 10
+        }
+    }
+}
+
+fun <TSource> Sequence<TSource>.sumDecimal(selector: (TSource) -> BigDecimal, scale: Int): BigDecimal {
+    val sum = DecimalSum(scale)
+    for (element in this) {
+        sum.add(selector(element))
+    }
+    return sum.sum()
+}
+
+fun <TSource> Sequence<TSource>.averageDecimal(
+    selector: (TSource) -> BigDecimal,
+    scale: Int,
+    mathContext: MathContext
+): BigDecimal {
+    val sum = DecimalSum(scale)
+    for (element in this) {
+        sum.add(selector(element))
+    }
+    return sum.average(mathContext)
+}
@@ -0,0 +1,368 @@
+package linq
+
+import java.io.InputStream
+import java.nio.charset.StandardCharsets
+
+/**
+ * A reusable view over one record of a delimited (CSV/TSV) source.
+ *
+ * The same instance is returned for every record of an iteration and only stays valid until the iterator advances,
+ * so values have to be read out through the typed accessors before moving to the next record.
+ * Fields are parsed straight from the read buffer; nothing is decoded until an accessor is called.
+ */
+class DelimitedRow internal constructor() {
+    internal var buffer: ByteArray = ByteArray(0)
+    internal var starts = IntArray(8)
+    internal var ends = IntArray(8)
+    internal var escaped = BooleanArray(8)
+
+    /**
+     * The number of fields of the current record, or of the projection when columns were selected.
+     */
+    var fieldCount: Int = 0
+        internal set
+
+    internal fun ensureCapacity(size: Int) {
+        if (size > starts.size) {
+            val capacity = maxOf(size, starts.size * 2)
+            starts = starts.copyOf(capacity)
+            ends = ends.copyOf(capacity)
+            escaped = escaped.copyOf(capacity)
+        }
+    }
+
+    private fun checkColumn(column: Int) {
+        if (column < 0 || column >= fieldCount) throw IndexOutOfBoundsException("column: $column, fieldCount: $fieldCount")
+    }
+
+    /**
+     * Determines whether a field is empty or missing from the current record.
+     * @param [column] The zero-based field index.
+     * @return true if the field has no content; otherwise, false.
+     * @throws [IndexOutOfBoundsException] [column] is outside the record.
+     */
+    fun isEmpty(column: Int): Boolean {
+        checkColumn(column)
+        return starts[column] >= ends[column]
+    }
+
+    /**
+     * Parses a field as an [Int] without decoding it to a string.
+     * @param [column] The zero-based field index.
+     * @return The field value.
+     * @throws [IndexOutOfBoundsException] [column] is outside the record.
+     * @throws [NumberFormatException] The field is not a valid [Int].
+     */
+    fun getInt(column: Int): Int {
+        val value = getLong(column)
+        if (value < Int.MIN_VALUE || value > Int.MAX_VALUE) throw NumberFormatException(getString(column))
+        return value.toInt()
+    }
+
+    /**
+     * Parses a field as a [Long] without decoding it to a string.
+     * @param [column] The zero-based field index.
+     * @return The field value.
+     * @throws [IndexOutOfBoundsException] [column] is outside the record.
+     * @throws [NumberFormatException] The field is not a valid [Long].
+     */
+    fun getLong(column: Int): Long {
+        checkColumn(column)
+        val buf = buffer
+        var i = starts[column]
+        val end = ends[column]
+        if (i >= end) throw NumberFormatException("empty field at column $column")
+        val negative = buf[i] == '-'.code.toByte()
+        if (negative || buf[i] == '+'.code.toByte()) i++
+        if (i >= end) throw NumberFormatException(getString(column))
+        // accumulate negatively so that Long.MIN_VALUE is representable
+        var result = 0L
+        while (i < end) {
+            val digit = buf[i] - '0'.code.toByte()
+            if (digit < 0 || digit > 9 || result < Long.MIN_VALUE / 10) throw NumberFormatException(getString(column))
+            result = result * 10 - digit
+            if (result > 0) throw NumberFormatException(getString(column))
+            i++
+        }
+        if (!negative) {
+            if (result == Long.MIN_VALUE) throw NumberFormatException(getString(column))
+            result = -result
+        }
+        return result
+    }
+
+    /**
+     * Parses a field as a [Double]. Plain decimals with at most 15 significant digits are converted without
+     * decoding the field; other inputs fall back to [java.lang.Double.parseDouble].
+     * @param [column] The zero-based field index.
+     * @return The field value.
+     * @throws [IndexOutOfBoundsException] [column] is outside the record.
+     * @throws [NumberFormatException] The field is not a valid [Double].
+     */
+    fun getDouble(column: Int): Double {
+        checkColumn(column)
+        val buf = buffer
+        var i = starts[column]
+        val end = ends[column]
+        if (i >= end) throw NumberFormatException("empty field at column $column")
+        val negative = buf[i] == '-'.code.toByte()
+        if (negative || buf[i] == '+'.code.toByte()) i++
+        var mantissa = 0L
+        var digits = 0
+        var fractionDigits = 0
+        var seenDigit = false
+        var seenPoint = false
+        while (i < end) {
+            val b = buf[i]
+            if (b >= '0'.code.toByte() && b <= '9'.code.toByte()) {
+                seenDigit = true
+                if (mantissa != 0L || b != '0'.code.toByte()) digits++
+                if (digits > 15) return getString(column).toDouble()
+                mantissa = mantissa * 10 + (b - '0'.code.toByte())
+                if (seenPoint) fractionDigits++
+            } else if (b == '.'.code.toByte() && !seenPoint) {
+                seenPoint = true
+            } else {
+                // exponents, NaN, Infinity and malformed input take the slow path
+                return getString(column).toDouble()
+            }
+            i++
+        }
+        if (!seenDigit) throw NumberFormatException(getString(column))
+        // exact when both the mantissa and the power of ten are representable (Clinger's fast path)
+        val value = if (fractionDigits <= 22) mantissa.toDouble() / POWERS_OF_TEN[fractionDigits]
+        else return getString(column).toDouble()
+        return if (negative) -value else value
+    }
+
+    /**
+     * Copies the raw bytes of a field, with quoting removed.
+     * @param [column] The zero-based field index.
+     * @return A new array containing the field content.
+     * @throws [IndexOutOfBoundsException] [column] is outside the record.
+     */
+    fun getBytes(column: Int): ByteArray {
+        checkColumn(column)
+        val start = starts[column]
+        val end = ends[column]
+        if (start >= end) return ByteArray(0)
+        if (!escaped[column]) return buffer.copyOfRange(start, end)
+        val out = ByteArray(end - start)
+        var size = 0
+        var i = start
+        while (i < end) {
+            out[size++] = buffer[i]
+            // a doubled quote inside a quoted field stands for a single quote
+            i += if (buffer[i] == QUOTE && i + 1 < end && buffer[i + 1] == QUOTE) 2 else 1
+        }
+        return out.copyOf(size)
+    }
+
+    /**
+     * Decodes a field as a UTF-8 string, with quoting removed.
+     * @param [column] The zero-based field index.
+     * @return The field content.
+     * @throws [IndexOutOfBoundsException] [column] is outside the record.
+     */
+    fun getString(column: Int): String {
+        checkColumn(column)
+        if (escaped[column]) return String(getBytes(column), StandardCharsets.UTF_8)
+        return String(buffer, starts[column], ends[column] - starts[column], StandardCharsets.UTF_8)
+    }
+
+    override fun toString(): String = (0 until fieldCount).joinToString(",", "[", "]") { getString(it) }
+
+    private companion object {
+        val POWERS_OF_TEN = DoubleArray(23).also { for (i in it.indices) it[i] = if (i == 0) 1.0 else it[i - 1] * 10 }
+    }
+}
+
+private const val QUOTE = '"'.code.toByte()
+private const val CR = '\r'.code.toByte()
+private const val LF = '\n'.code.toByte()
+
+internal class DelimitedIterator(
+    private val input: InputStream,
+    private val delimiter: Byte,
+    skipHeader: Boolean,
+    columns: IntArray
+) : Iterator<DelimitedRow>, AutoCloseable {
+    private val cleanable = Concurrency.cleaner.register(this, InputCloser(input))
+    private val row = DelimitedRow()
+    private var buffer = ByteArray(64 * 1024)
+    private var position = 0
+    private var limit = 0
+    private var eof = false
+    private var ready = false
+    private var finished = false
+
+    // maps a source column to its slot in the row view, -1 for columns that are not projected
+    private val slots: IntArray? = if (columns.isEmpty()) null else {
+        require(columns.all { it >= 0 }) { "columns must not be negative" }
+        IntArray(columns.max() + 1) { -1 }.also { slots -> columns.forEachIndexed { i, c -> slots[c] = i } }
+    }
+    private val projected = columns.size
+
+    init {
+        row.ensureCapacity(projected)
+        try {
+            if (skipHeader) hasNext().also { ready = false }
+        } catch (e: Throwable) {
+            cleanable.clean()
+            throw e
+        }
+    }
+
+    override fun hasNext(): Boolean {
+        if (ready) return true
+        if (finished) return false
+        while (true) {
+            when (parseRow()) {
+                ROW -> {
+                    row.buffer = buffer
+                    ready = true
+                    return true
+                }
+
+                BLANK -> continue
+                END -> {
+                    close()
+                    return false
+                }
+
+                else -> fill()
+            }
+        }
+    }
+
+    override fun next(): DelimitedRow {
+        if (!hasNext()) throw NoSuchElementException()
+        ready = false
+        return row
+    }
+
+    /**
+     * Closes the input; the iterator then has no more elements.
+     */
+    override fun close() {
+        finished = true
+        ready = false
+        cleanable.clean()
+    }
+
+    private fun fill() {
+        if (position > 0) {
+            buffer.copyInto(buffer, 0, position, limit)
+            limit -= position
+            position = 0
+        } else if (limit == buffer.size) {
+            buffer = buffer.copyOf(buffer.size * 2)
+        }
+        val read = input.read(buffer, limit, buffer.size - limit)
+        if (read < 0) eof = true else limit += read
+    }
+
+    private fun record(column: Int, start: Int, end: Int, escaped: Boolean) {
+        val slot = if (slots == null) column.also { row.ensureCapacity(column + 1) }
+        else if (column < slots.size) slots[column] else -1
+        if (slot < 0) return
+        row.starts[slot] = start
+        row.ends[slot] = end
+        row.escaped[slot] = escaped
+    }
+
+    private fun parseRow(): Int {
+        val buf = buffer
+        var i = position
+        if (i >= limit) return if (eof) END else MORE
+        if (buf[i] == LF || buf[i] == CR) {
+            if (buf[i] == CR) {
+                if (i + 1 >= limit && !eof) return MORE
+                if (i + 1 < limit && buf[i + 1] == LF) i++
+            }
+            position = i + 1
+            return BLANK
+        }
+        var column = 0
+        while (true) {
+            var start: Int
+            var end: Int
+            var escaped = false
+            if (i < limit && buf[i] == QUOTE) {
+                start = i + 1
+                var j = start
+                while (true) {
+                    if (j >= limit) {
+                        if (!eof) return MORE
+                        end = j
+                        break
+                    }
+                    if (buf[j] == QUOTE) {
+                        if (j + 1 >= limit && !eof) return MORE
+                        if (j + 1 < limit && buf[j + 1] == QUOTE) {
+                            escaped = true
+                            j += 2
+                            continue
+                        }
+                        end = j
+                        j++
+                        break
+                    }
+                    j++
+                }
+                // tolerate stray characters between the closing quote and the delimiter
+                while (j < limit && buf[j] != delimiter && buf[j] != LF && buf[j] != CR) j++
+                i = j
+            } else {
+                start = i
+                while (i < limit && buf[i] != delimiter && buf[i] != LF && buf[i] != CR) i++
+                end = i
+            }
+            if (i >= limit && !eof) return MORE
+            record(column++, start, end, escaped)
+            if (i < limit && buf[i] == delimiter) {
+                i++
+                continue
+            }
+            if (i < limit && buf[i] == CR) {
+                if (i + 1 >= limit && !eof) return MORE
+                if (i + 1 < limit && buf[i + 1] == LF) i++
+            }
+            position = if (i < limit) i + 1 else i
+            break
+        }
+        if (slots == null) {
+            row.fieldCount = column
+        } else {
+            row.fieldCount = projected
+            for (c in column until slots.size) record(c, 0, 0, false)
+        }
+        return ROW
+    }
+
+    private companion object {
+        const val ROW = 0
+        const val BLANK = 1
+        const val END = 2
+        const val MORE = 3
+    }
+}
+
+/**
+ * Closes the input of an iterator that is closed or becomes unreachable. It must not refer to the iterator itself.
+ */
+private class InputCloser(private val input: InputStream) : Runnable {
+    override fun run() = input.close()
+}
+
+internal fun delimitedSequence(
+    open: () -> InputStream,
+    delimiter: Char,
+    skipHeader: Boolean,
+    columns: IntArray
+): Sequence<DelimitedRow> {
+    require(delimiter.code < 0x80 && delimiter != '"' && delimiter != '\r' && delimiter != '\n') {
+        "delimiter must be a single-byte character other than quote or line break"
+    }
+    return Sequence { DelimitedIterator(open(), delimiter.code.toByte(), skipHeader, columns) }
+}
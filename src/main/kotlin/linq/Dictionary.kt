@@ -0,0 +1,27 @@
+package linq
+
+/**
+ * Assigns dense `int` codes to distinct values in order of first appearance, so that repeated values can be stored,
+ * compared and grouped as codes and decoded only when needed.
+ */
+internal class Dictionary<T> {
+    private val codes = HashMap<T, Int>()
+    private val values = ArrayList<T>()
+
+    val size: Int get() = values.size
+
+    fun encode(value: T): Int {
+        val code = codes[value]
+        if (code != null) return code
+        values.add(value)
+        codes[value] = values.size - 1
+        return values.size - 1
+    }
+
+    /**
+     * @return The code of [value], or -1 if it has none.
+     */
+    fun codeOf(value: T): Int = codes[value] ?: -1
+
+    fun decode(code: Int): T = values[code]
+}
@@ -0,0 +1,155 @@
+package linq
+
+import java.util.AbstractMap
+
+/**
+ * The elements of a sequence with their keys replaced by dense `int` codes, assigned in order of first appearance.
+ * Each key is hashed once, when the sequence is encoded; grouping, counting, distinct and join then work on arrays
+ * indexed by code, and keys are decoded only in the results. Encoding materializes the sequence, so it pays off when
+ * a sequence with few distinct keys is queried more than once.
+ */
+class DictionaryEncoded<TSource, TKey> internal constructor(source: Sequence<TSource>, keySelector: (TSource) -> TKey) {
+    private val elements: List<TSource>
+    private val codes: IntArray
+    private val dictionary = Dictionary<TKey>()
+
+    init {
+        elements = source.toList()
+        codes = IntArray(elements.size) { dictionary.encode(keySelector(elements[it])) }
+    }
+
+    /**
+     * The number of elements.
+     */
+    val size: Int get() = elements.size
+
+    /**
+     * The number of distinct keys.
+     */
+    val cardinality: Int get() = dictionary.size
+
+    /**
+     * Returns the distinct keys.
+     * @return The keys, indexed by code.
+     */
+    fun keys(): List<TKey> = List(dictionary.size) { dictionary.decode(it) }
+
+    /**
+     * Returns the code of each element.
+     * @return A copy of the codes, in element order.
+     */
+    fun codes(): IntArray = codes.copyOf()
+
+    /**
+     * Counts the elements per key.
+     * @return An [Enumerable] containing the count of each key, in order of first appearance.
+     */
+    fun countBy(): Enumerable<Map.Entry<TKey, Int>> {
+        val counts = IntArray(dictionary.size)
+        for (code in codes) counts[code]++
+        return Enumerable(counts.indices.asSequence().map { AbstractMap.SimpleImmutableEntry(dictionary.decode(it), counts[it]) })
+    }
+
+    /**
+     * Applies an accumulator function over the elements, grouping results by key.
+     * @param [seed] The initial accumulator value of each key.
+     * @param [func] An accumulator function to be invoked on each element.
+     * @return An [Enumerable] containing the aggregate of each key, in order of first appearance.
+     */
+    fun <TAccumulate> aggregateBy(
+        seed: TAccumulate,
+        func: (TAccumulate, TSource) -> TAccumulate
+    ): Enumerable<Map.Entry<TKey, TAccumulate>> {
+        val accumulators = MutableList(dictionary.size) { seed }
+        for (i in codes.indices) {
+            accumulators[codes[i]] = func(accumulators[codes[i]], elements[i])
+        }
+        return Enumerable(accumulators.indices.asSequence().map {
+            AbstractMap.SimpleImmutableEntry(dictionary.decode(it), accumulators[it])
+        })
+    }
+
+    /**
+     * Groups the elements by key.
+     * @return An [Enumerable] of groups, in order of first appearance, each listing its elements in source order.
+     */
+    fun groupBy(): Enumerable<Group<TKey, TSource>> {
+        val (starts, members) = buckets(codes, dictionary.size)
+        return Enumerable((0 until dictionary.size).asSequence().map { code ->
+            Group(dictionary.decode(code), Enumerable((starts[code] until starts[code + 1]).asSequence().map { elements[members[it]] }))
+        })
+    }
+
+    /**
+     * Returns the first element of each key.
+     * @return An [Enumerable] of one element per distinct key, in order of first appearance.
+     */
+    fun distinct(): Enumerable<TSource> {
+        val firsts = IntArray(dictionary.size) { -1 }
+        for (i in codes.indices.reversed()) firsts[codes[i]] = i
+        return Enumerable(firsts.asSequence().map { elements[it] })
+    }
+
+    /**
+     * Correlates the elements with those of another sequence that have equal keys. The keys of [inner] are looked
+     * up in the dictionary once each, and inner elements whose key never occurs here are dropped right away.
+     * @param [inner] The sequence to join.
+     * @param [innerKeySelector] A function to extract the join key from each element of [inner].
+     * @param [resultSelector] A function to create a result element from two matching elements.
+     * @return An [Enumerable] of the results, in the order of the encoded elements.
+     */
+    fun <TInner, TResult> join(
+        inner: Iterable<TInner>,
+        innerKeySelector: (TInner) -> TKey,
+        resultSelector: (TSource, TInner) -> TResult
+    ): Enumerable<TResult> = Enumerable(sequence {
+        val innerElements = ArrayList<TInner>()
+        val innerCodes = IntArrayList()
+        for (element in inner) {
+            val code = dictionary.codeOf(innerKeySelector(element))
+            if (code < 0) continue
+            innerElements.add(element)
+            innerCodes.add(code)
+        }
+        val (starts, members) = buckets(innerCodes.toArray(), dictionary.size)
+        for (i in codes.indices) {
+            val code = codes[i]
+            for (m in starts[code] until starts[code + 1]) {
+                yield(resultSelector(elements[i], innerElements[members[m]]))
+            }
+        }
+    })
+}
+
+/**
+ * Lays out the positions of each code contiguously: the positions with code `c` are
+ * `members[starts[c] until starts[c + 1]]`, in ascending order.
+ */
+internal fun buckets(codes: IntArray, cardinality: Int): Pair<IntArray, IntArray> {
+    val starts = IntArray(cardinality + 1)
+    for (code in codes) starts[code + 1]++
+    for (c in 0 until cardinality) starts[c + 1] += starts[c]
+    val fill = starts.copyOf(cardinality)
+    val members = IntArray(codes.size)
+    for (i in codes.indices) members[fill[codes[i]]++] = i
+    return Pair(starts, members)
+}
+
+/**
+ * A growable list of primitive `int`s.
+ */
+internal class IntArrayList {
+    private var values = IntArray(16)
+
+    var size = 0
+        private set
+
+    fun add(value: Int) {
+        if (size == values.size) values = values.copyOf(Math.multiplyExact(size, 2))
+        values[size++] = value
+    }
+
+    operator fun get(index: Int): Int = values[index]
+
+    fun toArray(): IntArray = values.copyOf(size)
+}
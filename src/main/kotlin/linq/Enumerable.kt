@@ -1,6 +1,17 @@
 package linq
 
 import java.math.BigDecimal
+import java.math.MathContext
+import java.nio.file.Path
+import java.time.Duration
+import java.util.Random
+import java.util.concurrent.Executor
+import java.util.concurrent.Flow
+import java.util.function.BinaryOperator
+import java.util.function.Predicate
+import java.util.function.ToDoubleFunction
+import java.util.function.ToIntFunction
+import java.util.function.ToLongFunction
 
 /**
  * A Java-friendly wrapper around Kotlin [Sequence] that provides LINQ-style method names
@@ -43,6 +54,39 @@ class Enumerable<TSource> internal constructor(private val source: Sequence<TSou
         resultSelector: (TAccumulate) -> TResult
     ): TResult = resultSelector(source.fold(seed, func))
 
+    /**
+     * Applies an accumulator function over a sequence. Unlike [aggregate], the function is a
+     * [java.util.function.BinaryOperator], so Java callers avoid the Kotlin function adapters.
+     * @param [func] An accumulator function to be invoked on each element.
+     * @return The final accumulator value.
+     * @throws [NullPointerException] [func] is null.
+     * @throws [UnsupportedOperationException] source contains no elements.
+     */
+    fun reduce(func: BinaryOperator<TSource>): TSource {
+        val iterator = source.iterator()
+        if (!iterator.hasNext()) throw UnsupportedOperationException("Empty sequence can't be reduced.")
+        var accumulator = iterator.next()
+        while (iterator.hasNext()) {
+            accumulator = func.apply(accumulator, iterator.next())
+        }
+        return accumulator
+    }
+
+    /**
+     * Applies an accumulator function over a sequence, starting from [identity].
+     * @param [identity] The initial accumulator value.
+     * @param [func] An accumulator function to be invoked on each element.
+     * @return The final accumulator value.
+     * @throws [NullPointerException] [func] is null.
+     */
+    fun reduce(identity: TSource, func: BinaryOperator<TSource>): TSource {
+        var accumulator = identity
+        for (element in source) {
+            accumulator = func.apply(accumulator, element)
+        }
+        return accumulator
+    }
+
     /**
      * Applies an accumulator function over a sequence, grouping results by key.
      * @param [keySelector] A function to extract the key for each element.
@@ -121,7 +165,7 @@ class Enumerable<TSource> internal constructor(private val source: Sequence<TSou
      * @return the average of the sequence of values.
      * @throws [NullPointerException] [selector] is null.
      */
-    fun averageFloat(selector: (TSource) -> Float): Float = source.map(selector).average().toFloat()
+    fun averageFloat(selector: (TSource) -> Float): Float = source.averageCompensated { selector(it).toDouble() }.toFloat()
 
     /**
      * Computes the average of a sequence of [Double] values that are obtained by invoking a transform function on each element of the input sequence.
@@ -131,6 +175,17 @@ class Enumerable<TSource> internal constructor(private val source: Sequence<TSou
      */
     fun averageDouble(selector: (TSource) -> Double): Double = source.map(selector).average()
 
+    /**
+     * Computes the average of a sequence of [Double] values that are obtained by invoking a transform function on
+     * each element of the input sequence, using compensated summation so that rounding errors do not grow with the
+     * number of elements.
+     * @param [selector] A transform function to apply to each element.
+     * @return the average of the sequence of values, or [Double.NaN] if source contains no elements.
+     * @throws [NullPointerException] [selector] is null.
+     * @see CompensatedSum
+     */
+    fun averageDoubleCompensated(selector: (TSource) -> Double): Double = source.averageCompensated(selector)
+
     /**
      * Computes the average of a sequence of [BigDecimal] values that are obtained by invoking a transform function on each element of the input sequence.
      * @param [selector] A transform function to apply to each element.
@@ -140,6 +195,60 @@ class Enumerable<TSource> internal constructor(private val source: Sequence<TSou
      */
     fun averageBigDecimal(selector: (TSource) -> BigDecimal): BigDecimal = source.map(selector).average()
 
+    /**
+     * Computes the average of a sequence of [BigDecimal] values that are obtained by invoking a transform function on
+     * each element of the input sequence, rounding the quotient according to [mathContext] so that averages with a
+     * non-terminating decimal expansion can be computed.
+     * @param [selector] A transform function to apply to each element.
+     * @param [mathContext] The precision and rounding of the average.
+     * @return the average of the sequence of values.
+     * @throws [NullPointerException] [selector] is null.
+     * @throws [ArithmeticException] source contains no elements.
+     */
+    fun averageBigDecimal(selector: (TSource) -> BigDecimal, mathContext: MathContext): BigDecimal =
+        source.map(selector).average(mathContext)
+
+    /**
+     * Computes the average of a sequence of [BigDecimal] values with at most [scale] fractional digits, such as
+     * amounts of money. The values are summed as `long` units of `10^-scale` without allocating a [BigDecimal] per
+     * element, and the quotient is rounded according to [mathContext].
+     * @param [selector] A transform function to apply to each element.
+     * @param [scale] The number of fractional digits the values are summed at.
+     * @param [mathContext] The precision and rounding of the average.
+     * @return the average of the sequence of values.
+     * @throws [NullPointerException] [selector] is null.
+     * @throws [ArithmeticException] source contains no elements, or a value has more than [scale] fractional digits.
+     * @see DecimalSum
+     */
+    fun averageBigDecimal(selector: (TSource) -> BigDecimal, scale: Int, mathContext: MathContext): BigDecimal =
+        source.averageDecimal(selector, scale, mathContext)
+
+    /**
+     * Computes the average of the [Int] values obtained by invoking a [ToIntFunction] on each element, without boxing.
+     * @param [selector] A transform function to apply to each element.
+     * @return the average of the sequence of values, or [Double.NaN] if source contains no elements.
+     * @throws [NullPointerException] [selector] is null.
+     */
+    fun averageOfInt(selector: ToIntFunction<in TSource>): Double = source.averageOfInt(selector)
+
+    /**
+     * Computes the average of the [Long] values obtained by invoking a [ToLongFunction] on each element, without
+     * boxing.
+     * @param [selector] A transform function to apply to each element.
+     * @return the average of the sequence of values, or [Double.NaN] if source contains no elements.
+     * @throws [NullPointerException] [selector] is null.
+     */
+    fun averageOfLong(selector: ToLongFunction<in TSource>): Double = source.averageOfLong(selector)
+
+    /**
+     * Computes the average of the [Double] values obtained by invoking a [ToDoubleFunction] on each element, without
+     * boxing.
+     * @param [selector] A transform function to apply to each element.
+     * @return the average of the sequence of values, or [Double.NaN] if source contains no elements.
+     * @throws [NullPointerException] [selector] is null.
+     */
+    fun averageOfDouble(selector: ToDoubleFunction<in TSource>): Double = source.averageOfDouble(selector)
+
     /**
      * Casts the elements of an [Enumerable] to the specified type.
      * @param [clazz] the type class.
@@ -157,6 +266,181 @@ class Enumerable<TSource> internal constructor(private val source: Sequence<TSou
      */
     fun chunk(size: Int): Enumerable<List<TSource>> = Enumerable(source.chunked(size))
 
+    /**
+     * Splits the elements of a sequence into batches that are returned when they reach [maxSize] elements or when
+     * [maxDelay] has passed since their first element arrived, whichever comes first. Unlike [chunk], a slow source
+     * delays a batch by at most [maxDelay]. The source is iterated on a virtual thread (or a daemon thread where the
+     * runtime has none).
+     * @param [maxSize] The maximum size of each batch.
+     * @param [maxDelay] The maximum time a batch waits for more elements after its first one.
+     * @return An [Enumerable] that contains the elements of the input sequence split into batches.
+     * @throws [IllegalArgumentException] [maxSize] is below 1 or [maxDelay] is negative.
+     */
+    fun buffer(maxSize: Int, maxDelay: Duration): Enumerable<List<TSource>> = buffer(maxSize, maxDelay, false)
+
+    /**
+     * Splits the elements of a sequence into batches that are returned when they reach [maxSize] elements or when
+     * [maxDelay] has passed since their first element arrived, whichever comes first.
+     * With [reuse] set, every batch is the same list, cleared and refilled after the consumer moves on, so no list
+     * is allocated per batch; such a batch must be consumed or copied before requesting the next one.
+     * @param [maxSize] The maximum size of each batch.
+     * @param [maxDelay] The maximum time a batch waits for more elements after its first one.
+     * @param [reuse] Whether to return the same list for every batch.
+     * @return An [Enumerable] that contains the elements of the input sequence split into batches.
+     * @throws [IllegalArgumentException] [maxSize] is below 1 or [maxDelay] is negative.
+     */
+    fun buffer(maxSize: Int, maxDelay: Duration, reuse: Boolean): Enumerable<List<TSource>> =
+        Enumerable(source.buffer(maxSize, maxDelay, reuse, Concurrency.executor))
+
+    /**
+     * Splits the elements of a sequence into sliding windows, backed by a single reusable ring buffer.
+     * Only complete windows are returned.
+     * @param [size] The number of elements in each window.
+     * @param [step] The number of elements the window moves by; windows overlap when [step] is below [size].
+     * @return An [Enumerable] of one reused read-only list view, valid until the next window is requested;
+     * copy it to retain a window.
+     * @throws [IllegalArgumentException] [size] or [step] is below 1.
+     */
+    fun window(size: Int, step: Int): Enumerable<List<TSource>> = Enumerable(source.window(size, step))
+
+    /**
+     * Groups elements into tumbling event-time windows of [size], aligned to multiples of [size]. A window is
+     * returned as soon as the largest timestamp seen passes its end, so only open windows are held in memory
+     * and unbounded sources are processed incrementally. Elements for an already returned window are dropped.
+     * @param [timestampSelector] A function to extract the event time of each element.
+     * @param [size] The window length, in the unit of the timestamps.
+     * @return An [Enumerable] of windows with their elements, ordered by window start.
+     * @throws [NullPointerException] [timestampSelector] is null.
+     * @throws [IllegalArgumentException] [size] is below 1.
+     */
+    fun windowByTime(timestampSelector: (TSource) -> Long, size: Long): Enumerable<TimeWindow<List<TSource>>> =
+        Enumerable(source.windowByTime(timestampSelector, size, 0, { mutableListOf<TSource>() }) { list, e ->
+            list.add(e)
+            list
+        })
+
+    /**
+     * Aggregates elements over tumbling event-time windows of [size], aligned to multiples of [size]. The watermark
+     * trails the largest timestamp seen by [allowedLateness]; a window is returned as soon as the watermark passes its
+     * end, and elements for an already returned window are dropped.
+     * @param [timestampSelector] A function to extract the event time of each element.
+     * @param [size] The window length, in the unit of the timestamps.
+     * @param [allowedLateness] How far behind the largest timestamp seen an element may still arrive.
+     * @param [seedSelector] A factory for the initial accumulator value of each window.
+     * @param [func] An accumulator function to be invoked on each element.
+     * @return An [Enumerable] of windows with their aggregates, ordered by window start.
+     * @throws [NullPointerException] [timestampSelector], [seedSelector] or [func] is null.
+     * @throws [IllegalArgumentException] [size] is below 1 or [allowedLateness] is negative.
+     */
+    fun <TAccumulate> windowByTime(
+        timestampSelector: (TSource) -> Long,
+        size: Long,
+        allowedLateness: Long,
+        seedSelector: () -> TAccumulate,
+        func: (TAccumulate, TSource) -> TAccumulate
+    ): Enumerable<TimeWindow<TAccumulate>> =
+        Enumerable(source.windowByTime(timestampSelector, size, allowedLateness, seedSelector, func))
+
+    /**
+     * Groups elements into event-time sessions: runs of elements whose timestamps are less than [gap] apart.
+     * A session is returned as soon as the largest timestamp seen is [gap] past its last element, so only open
+     * sessions are held in memory. The window end is the last timestamp plus [gap].
+     * @param [timestampSelector] A function to extract the event time of each element.
+     * @param [gap] The inactivity gap that closes a session.
+     * @return An [Enumerable] of sessions with their elements, ordered by session start.
+     * @throws [NullPointerException] [timestampSelector] is null.
+     * @throws [IllegalArgumentException] [gap] is below 1.
+     */
+    fun sessionWindows(timestampSelector: (TSource) -> Long, gap: Long): Enumerable<TimeWindow<List<TSource>>> =
+        Enumerable(source.sessionWindows(timestampSelector, gap, 0, { mutableListOf<TSource>() }, { list, e ->
+            list.add(e)
+            list
+        }) { a, b ->
+            a.addAll(b)
+            a
+        })
+
+    /**
+     * Aggregates elements over event-time sessions: runs of elements whose timestamps are less than [gap] apart.
+     * The watermark trails the largest timestamp seen by [allowedLateness]; a session is returned once the watermark
+     * is [gap] past its last element. A late element that bridges two open sessions merges them with [combiner]; a
+     * late element is only dropped when no open session is within [gap] of it and the watermark is [gap] past it.
+     * @param [timestampSelector] A function to extract the event time of each element.
+     * @param [gap] The inactivity gap that closes a session.
+     * @param [allowedLateness] How far behind the largest timestamp seen an element may still arrive.
+     * @param [seedSelector] A factory for the initial accumulator value of each session.
+     * @param [func] An accumulator function to be invoked on each element.
+     * @param [combiner] A function merging the accumulators of an earlier and a later session.
+     * @return An [Enumerable] of sessions with their aggregates, ordered by session start.
+     * @throws [NullPointerException] [timestampSelector], [seedSelector], [func] or [combiner] is null.
+     * @throws [IllegalArgumentException] [gap] is below 1 or [allowedLateness] is negative.
+     */
+    fun <TAccumulate> sessionWindows(
+        timestampSelector: (TSource) -> Long,
+        gap: Long,
+        allowedLateness: Long,
+        seedSelector: () -> TAccumulate,
+        func: (TAccumulate, TSource) -> TAccumulate,
+        combiner: (TAccumulate, TAccumulate) -> TAccumulate
+    ): Enumerable<TimeWindow<TAccumulate>> =
+        Enumerable(source.sessionWindows(timestampSelector, gap, allowedLateness, seedSelector, func, combiner))
+
+    /**
+     * Applies an accumulator function over a sequence and returns every intermediate result.
+     * @param [seed] The initial accumulator value, which is not itself returned.
+     * @param [func] An accumulator function to be invoked on each element.
+     * @return An [Enumerable] that contains the accumulator value after each element.
+     * @throws [NullPointerException] [func] is null.
+     */
+    fun <TAccumulate> scan(seed: TAccumulate, func: (TAccumulate, TSource) -> TAccumulate): Enumerable<TAccumulate> =
+        Enumerable(source.scan(seed, func))
+
+    /**
+     * Computes the sum of each sliding window of [size] values in O(1) per element.
+     * @param [size] The number of values in each window.
+     * @param [selector] A transform function to apply to each element.
+     * @return An [Enumerable] that contains one sum per complete window.
+     * @throws [NullPointerException] [selector] is null.
+     * @throws [IllegalArgumentException] [size] is below 1.
+     */
+    fun movingSum(size: Int, selector: (TSource) -> Double): Enumerable<Double> =
+        Enumerable(source.movingSum(size, selector))
+
+    /**
+     * Computes the average of each sliding window of [size] values in O(1) per element.
+     * @param [size] The number of values in each window.
+     * @param [selector] A transform function to apply to each element.
+     * @return An [Enumerable] that contains one average per complete window.
+     * @throws [NullPointerException] [selector] is null.
+     * @throws [IllegalArgumentException] [size] is below 1.
+     */
+    fun movingAverage(size: Int, selector: (TSource) -> Double): Enumerable<Double> =
+        Enumerable(source.movingSum(size, selector).map { it / size })
+
+    /**
+     * Computes the minimum of each sliding window of [size] values in amortized O(1) per element,
+     * using a monotonic deque.
+     * @param [size] The number of values in each window.
+     * @param [selector] A transform function to apply to each element.
+     * @return An [Enumerable] that contains one minimum per complete window.
+     * @throws [NullPointerException] [selector] is null.
+     * @throws [IllegalArgumentException] [size] is below 1.
+     */
+    fun movingMin(size: Int, selector: (TSource) -> Double): Enumerable<Double> =
+        Enumerable(source.movingExtreme(size, selector, false))
+
+    /**
+     * Computes the maximum of each sliding window of [size] values in amortized O(1) per element,
+     * using a monotonic deque.
+     * @param [size] The number of values in each window.
+     * @param [selector] A transform function to apply to each element.
+     * @return An [Enumerable] that contains one maximum per complete window.
+     * @throws [NullPointerException] [selector] is null.
+     * @throws [IllegalArgumentException] [size] is below 1.
+     */
+    fun movingMax(size: Int, selector: (TSource) -> Double): Enumerable<Double> =
+        Enumerable(source.movingExtreme(size, selector, true))
+
     /**
      * Concatenates two sequences.
      * @param [other] The sequence to concatenate to the source.
@@ -209,6 +493,67 @@ class Enumerable<TSource> internal constructor(private val source: Sequence<TSou
     fun <TKey> countBy(keySelector: (TSource) -> TKey): Enumerable<Map.Entry<TKey, Int>> =
         Enumerable(source.groupingBy(keySelector).eachCount().asSequence())
 
+    /**
+     * Returns the most frequent keys of a sequence, counted with a fixed-size [SpaceSaving] summary
+     * instead of an exact counter per key.
+     * @param [keySelector] A function to extract the key for each element.
+     * @param [n] The number of keys to return.
+     * @param [errorBound] The maximum overestimate of a count, as a fraction of the number of elements;
+     * the summary keeps `max(n, 1 / errorBound)` counters.
+     * @return An enumerable containing up to [n] keys with their estimated counts, most frequent first.
+     * @throws [NullPointerException] [keySelector] is null.
+     * @throws [IllegalArgumentException] [n] is below 1 or [errorBound] is not between 0 and 1 exclusive.
+     */
+    fun <TKey> topFrequent(keySelector: (TSource) -> TKey, n: Int, errorBound: Double): Enumerable<Map.Entry<TKey, Long>> =
+        Enumerable(source.topFrequent(keySelector, n, errorBound))
+
+    /**
+     * Estimates the number of distinct keys in a sequence with a [HyperLogLog] sketch of precision 14,
+     * using 16 KiB regardless of the input size.
+     * @param [keySelector] A function to extract the key for each element.
+     * @return The estimated number of distinct keys, within about 0.8% relative standard error.
+     * @throws [NullPointerException] [keySelector] is null.
+     */
+    fun <TKey> countDistinctApprox(keySelector: (TSource) -> TKey): Long = source.countDistinctApprox(keySelector, 14)
+
+    /**
+     * Estimates the number of distinct keys in a sequence with a [HyperLogLog] sketch.
+     * @param [keySelector] A function to extract the key for each element.
+     * @param [precision] The sketch precision, from 4 to 18; the sketch uses `2^precision` bytes.
+     * @return The estimated number of distinct keys.
+     * @throws [NullPointerException] [keySelector] is null.
+     * @throws [IllegalArgumentException] [precision] is out of range.
+     */
+    fun <TKey> countDistinctApprox(keySelector: (TSource) -> TKey, precision: Int): Long =
+        source.countDistinctApprox(keySelector, precision)
+
+    /**
+     * Estimates the number of distinct values per group key with one [HyperLogLog] sketch per group.
+     * To keep the sketches themselves, for example to merge them with other partitions, use the [aggregateBy]
+     * overload taking a `seedSelector` that creates a new [HyperLogLog] per key, and [HyperLogLog.add].
+     * @param [groupKey] A function to extract the group key for each element.
+     * @param [valueKey] A function to extract the value whose distinct count is estimated.
+     * @param [precision] The sketch precision, from 4 to 18; each group uses `2^precision` bytes.
+     * @return An enumerable containing the estimated distinct count for each group key.
+     * @throws [NullPointerException] [groupKey] or [valueKey] is null.
+     * @throws [IllegalArgumentException] [precision] is out of range.
+     */
+    fun <TKey, TValue> countDistinctApproxBy(
+        groupKey: (TSource) -> TKey,
+        valueKey: (TSource) -> TValue,
+        precision: Int
+    ): Enumerable<Map.Entry<TKey, Long>> = Enumerable(source.countDistinctApproxBy(groupKey, valueKey, precision))
+
+    /**
+     * Encodes the key of each element as a dense `int` code, so that repeated grouping, counting, distinct and join
+     * operations on the key work on primitive arrays instead of hashing every key again.
+     * @param [keySelector] A function to extract the key from each element.
+     * @return A [DictionaryEncoded] view of the materialized sequence.
+     * @throws [NullPointerException] [keySelector] is null.
+     */
+    fun <TKey> dictionaryEncode(keySelector: (TSource) -> TKey): DictionaryEncoded<TSource, TKey> =
+        DictionaryEncoded(source, keySelector)
+
     /**
      * Returns distinct elements from a sequence by using the default equality comparer to compare values.
      * @return An Enumerable that contains distinct elements from the source sequence.
@@ -335,6 +680,85 @@ class Enumerable<TSource> internal constructor(private val source: Sequence<TSou
         resultSelector: (TSource, TInner) -> TResult
     ): Enumerable<TResult> = Enumerable(source.join(inner, outerKeySelector, innerKeySelector, resultSelector))
 
+    /**
+     * Correlates the elements of a sequence with the elements of an [IndexedCollection] through one of its hash
+     * indexes: each element of the source looks up its key in [index] instead of the collection being hashed again.
+     * @param [index] A hash index of the collection to join.
+     * @param [outerKeySelector] A function to extract the join key from each element of the source.
+     * @param [resultSelector] A function to create a result element from two matching elements.
+     * @return An [Enumerable] that has elements of type TResult that are obtained by performing an inner join.
+     * @throws [NullPointerException] [index], [outerKeySelector] or [resultSelector] is null.
+     */
+    fun <TInner, TKey, TResult> join(
+        index: HashIndex<TInner, TKey>,
+        outerKeySelector: (TSource) -> TKey,
+        resultSelector: (TSource, TInner) -> TResult
+    ): Enumerable<TResult> = Enumerable(source.flatMap { outer ->
+        index.lookup(outerKeySelector(outer)).asSequence().map { resultSelector(outer, it) }
+    })
+
+    /**
+     * Correlates the elements of two possibly unbounded sequences with a symmetric hash join. Both inputs are pulled
+     * alternately, each element is matched against the elements retained from the other input, and results are
+     * returned as soon as they appear. Each input retains at most [retention] of its most recent elements.
+     * @param [inner] The sequence to join to the source.
+     * @param [outerKeySelector] A function to extract the join key from each element of the source.
+     * @param [innerKeySelector] A function to extract the join key from each element of [inner].
+     * @param [retention] The maximum number of elements retained per input; older elements no longer match.
+     * @param [resultSelector] A function to create a result element from two matching elements.
+     * @return An [Enumerable] that has elements of type TResult, in the order matches are found.
+     * @throws [NullPointerException] [inner], [outerKeySelector], [innerKeySelector] or [resultSelector] is null.
+     * @throws [IllegalArgumentException] [retention] is below 1.
+     */
+    fun <TInner, TKey, TResult> symmetricJoin(
+        inner: Iterable<TInner>,
+        outerKeySelector: (TSource) -> TKey,
+        innerKeySelector: (TInner) -> TKey,
+        retention: Int,
+        resultSelector: (TSource, TInner) -> TResult
+    ): Enumerable<TResult> {
+        require(retention > 0) { "retention must be positive" }
+        return Enumerable(
+            source.symmetricJoin(
+                inner, outerKeySelector, innerKeySelector, null, null, retention.toLong(), resultSelector
+            )
+        )
+    }
+
+    /**
+     * Correlates the elements of two possibly unbounded sequences with a symmetric hash join over a time window.
+     * Both inputs are pulled alternately and two elements match when their keys are equal and their timestamps are at
+     * most [window] apart. Elements older than [window] before the newest element of the other input are evicted,
+     * so retained state is bounded by the window as long as each input is roughly ordered by time.
+     * @param [inner] The sequence to join to the source.
+     * @param [outerKeySelector] A function to extract the join key from each element of the source.
+     * @param [innerKeySelector] A function to extract the join key from each element of [inner].
+     * @param [outerTimestampSelector] A function to extract the event time from each element of the source.
+     * @param [innerTimestampSelector] A function to extract the event time from each element of [inner].
+     * @param [window] The maximum time distance between matching elements.
+     * @param [resultSelector] A function to create a result element from two matching elements.
+     * @return An [Enumerable] that has elements of type TResult, in the order matches are found.
+     * @throws [NullPointerException] Any argument is null.
+     * @throws [IllegalArgumentException] [window] is negative.
+     */
+    fun <TInner, TKey, TResult> symmetricJoin(
+        inner: Iterable<TInner>,
+        outerKeySelector: (TSource) -> TKey,
+        innerKeySelector: (TInner) -> TKey,
+        outerTimestampSelector: (TSource) -> Long,
+        innerTimestampSelector: (TInner) -> Long,
+        window: Long,
+        resultSelector: (TSource, TInner) -> TResult
+    ): Enumerable<TResult> {
+        require(window >= 0) { "window must not be negative" }
+        return Enumerable(
+            source.symmetricJoin(
+                inner, outerKeySelector, innerKeySelector,
+                outerTimestampSelector, innerTimestampSelector, window, resultSelector
+            )
+        )
+    }
+
     fun last(): TSource = source.last()
 
     fun last(predicate: (TSource) -> Boolean): TSource = source.last(predicate)
@@ -381,6 +805,47 @@ class Enumerable<TSource> internal constructor(private val source: Sequence<TSou
     fun <TKey> minBy(selector: (TSource) -> TKey, comparer: Comparator<TKey>): TSource =
         source.minBy(selector, comparer)
 
+    /**
+     * Estimates quantiles of the values obtained by invoking a transform function on each element, in a single pass
+     * and bounded memory, using a [TDigest].
+     * @param [selector] A transform function to apply to each element.
+     * @param [quantiles] The quantiles to estimate, each between 0 and 1; for example 0.5 and 0.99 for p50 and p99.
+     * @return The estimated values, in the order of [quantiles]; NaN when the sequence is empty.
+     * @throws [NullPointerException] [selector] is null.
+     * @throws [IllegalArgumentException] A quantile is outside [0, 1], or a value is NaN.
+     */
+    fun percentile(selector: (TSource) -> Double, vararg quantiles: Double): DoubleArray =
+        source.percentile(selector, *quantiles)
+
+    /**
+     * Estimates quantiles per key with one [TDigest] per key. To keep the digests themselves, for example to merge
+     * them with other partitions, use the [aggregateBy] overload taking a `seedSelector` that creates a new
+     * [TDigest] per key, and [TDigest.add].
+     * @param [keySelector] A function to extract the key for each element.
+     * @param [selector] A transform function to apply to each element.
+     * @param [quantiles] The quantiles to estimate, each between 0 and 1.
+     * @return An enumerable containing the estimated values for each key, in the order of [quantiles].
+     * @throws [NullPointerException] [keySelector] or [selector] is null.
+     * @throws [IllegalArgumentException] A quantile is outside [0, 1], or a value is NaN.
+     */
+    fun <TKey> percentileBy(
+        keySelector: (TSource) -> TKey,
+        selector: (TSource) -> Double,
+        vararg quantiles: Double
+    ): Enumerable<Map.Entry<TKey, DoubleArray>> = Enumerable(source.percentileBy(keySelector, selector, *quantiles))
+
+    /**
+     * Counts the values obtained by invoking a transform function on each element into buckets.
+     * @param [selector] A transform function to apply to each element.
+     * @param [boundaries] The strictly increasing bucket boundaries.
+     * @return The bucket counts; bucket `i` counts values in `[boundaries[i - 1], boundaries[i])`, with the first and
+     * last buckets open-ended, so the result has one more entry than [boundaries].
+     * @throws [NullPointerException] [selector] is null.
+     * @throws [IllegalArgumentException] [boundaries] is not strictly increasing.
+     */
+    fun histogram(selector: (TSource) -> Double, boundaries: DoubleArray): LongArray =
+        source.histogram(selector, boundaries)
+
     fun <TResult> ofType(clazz: Class<TResult>): Enumerable<TResult> = Enumerable(source.ofType(clazz))
 
     fun order(comparer: Comparator<TSource>): Enumerable<TSource> = Enumerable(source.sortedWith(comparer))
@@ -420,6 +885,76 @@ class Enumerable<TSource> internal constructor(private val source: Sequence<TSou
     fun <TResult> select(selector: (TSource, Int) -> TResult): Enumerable<TResult> =
         Enumerable(source.mapIndexed { index, e -> selector(e, index) })
 
+    /**
+     * Projects each element of a sequence into a new form by incorporating the element's index, which is passed as
+     * a primitive `int`.
+     * @param [selector] A transform function to apply to each source element and its index.
+     * @return An [Enumerable] whose elements are the result of invoking the transform function on each element of source.
+     * @throws [NullPointerException] [selector] is null.
+     */
+    fun <TResult> selectIndexed(selector: IndexedFunction<TSource, TResult>): Enumerable<TResult> =
+        Enumerable(source.selectIndexed(selector))
+
+    /**
+     * Projects each element of a sequence into a new form, running up to [maxConcurrency] projections at a time on
+     * virtual threads (or daemon threads where the runtime has none), and returns the results in source order.
+     * This suits selectors that mostly wait, such as lookups in a storage layer.
+     * @param [maxConcurrency] The maximum number of projections in flight.
+     * @param [selector] A transform function to apply to each element.
+     * @return An [Enumerable] whose elements are the result of invoking the transform function on each element of
+     * source, in source order.
+     * @throws [IllegalArgumentException] [maxConcurrency] is below 1.
+     */
+    fun <TResult> selectConcurrent(maxConcurrency: Int, selector: (TSource) -> TResult): Enumerable<TResult> =
+        selectConcurrent(maxConcurrency, Concurrency.executor, selector)
+
+    /**
+     * Projects each element of a sequence into a new form, running up to [maxConcurrency] projections at a time on
+     * [executor], and returns the results in source order. A slow projection holds back the results after it, but
+     * never more than [maxConcurrency] of them; an exception thrown by [selector] is rethrown in its place.
+     * @param [maxConcurrency] The maximum number of projections in flight.
+     * @param [executor] The executor running the projections.
+     * @param [selector] A transform function to apply to each element.
+     * @return An [Enumerable] whose elements are the result of invoking the transform function on each element of
+     * source, in source order.
+     * @throws [IllegalArgumentException] [maxConcurrency] is below 1.
+     */
+    fun <TResult> selectConcurrent(
+        maxConcurrency: Int,
+        executor: Executor,
+        selector: (TSource) -> TResult
+    ): Enumerable<TResult> = Enumerable(source.selectConcurrent(maxConcurrency, true, executor, selector))
+
+    /**
+     * Projects each element of a sequence into a new form, running up to [maxConcurrency] projections at a time on
+     * virtual threads (or daemon threads where the runtime has none), and returns the results as they complete.
+     * @param [maxConcurrency] The maximum number of projections in flight.
+     * @param [selector] A transform function to apply to each element.
+     * @return An [Enumerable] whose elements are the result of invoking the transform function on each element of
+     * source, in completion order.
+     * @throws [IllegalArgumentException] [maxConcurrency] is below 1.
+     */
+    fun <TResult> selectConcurrentUnordered(
+        maxConcurrency: Int,
+        selector: (TSource) -> TResult
+    ): Enumerable<TResult> = selectConcurrentUnordered(maxConcurrency, Concurrency.executor, selector)
+
+    /**
+     * Projects each element of a sequence into a new form, running up to [maxConcurrency] projections at a time on
+     * [executor], and returns the results as they complete, so a slow projection never holds back the others.
+     * @param [maxConcurrency] The maximum number of projections in flight.
+     * @param [executor] The executor running the projections.
+     * @param [selector] A transform function to apply to each element.
+     * @return An [Enumerable] whose elements are the result of invoking the transform function on each element of
+     * source, in completion order.
+     * @throws [IllegalArgumentException] [maxConcurrency] is below 1.
+     */
+    fun <TResult> selectConcurrentUnordered(
+        maxConcurrency: Int,
+        executor: Executor,
+        selector: (TSource) -> TResult
+    ): Enumerable<TResult> = Enumerable(source.selectConcurrent(maxConcurrency, false, executor, selector))
+
     fun <TResult> selectMany(selector: (TSource) -> Iterable<TResult>): Enumerable<TResult> =
         Enumerable(source.selectMany(selector))
 
@@ -438,6 +973,82 @@ class Enumerable<TSource> internal constructor(private val source: Sequence<TSou
 
     fun shuffle(): Enumerable<TSource> = Enumerable(source.shuffled())
 
+    /**
+     * Iterates the sequence on a background thread, buffering up to [bufferSize] elements ahead of the consumer, so
+     * that producing elements (for example reading and decoding a file) overlaps with the work done on them.
+     * The producer runs on a virtual thread where the runtime supports them, and on a daemon thread otherwise.
+     * @param [bufferSize] The maximum number of elements produced ahead of the consumer.
+     * @return An [Enumerable] that contains the elements of the input sequence in the same order.
+     * @throws [IllegalArgumentException] [bufferSize] is below 1.
+     * @see prefetch
+     */
+    fun prefetch(bufferSize: Int): Enumerable<TSource> = prefetch(bufferSize, Concurrency.executor)
+
+    /**
+     * Iterates the sequence on a thread of [executor], buffering up to [bufferSize] elements ahead of the consumer.
+     * An exception thrown while producing is rethrown to the consumer once the elements before it are consumed.
+     * Every iteration starts its own producer, which stops when the iterator is exhausted, when it is closed
+     * through [AutoCloseable], or once an iterator abandoned early (for example by [first] or [take]) has been
+     * garbage collected; until then the producer waits on the full buffer rather than reading ahead.
+     * @param [bufferSize] The maximum number of elements produced ahead of the consumer.
+     * @param [executor] The executor running the producer.
+     * @return An [Enumerable] that contains the elements of the input sequence in the same order.
+     * @throws [IllegalArgumentException] [bufferSize] is below 1.
+     */
+    fun prefetch(bufferSize: Int, executor: Executor): Enumerable<TSource> =
+        Enumerable(source.prefetch(bufferSize, executor))
+
+    /**
+     * Draws a uniform random sample in a single pass, keeping at most [count] elements in memory.
+     * @param [count] The sample size.
+     * @return An Enumerable that contains [count] elements chosen uniformly at random, or every element if the
+     * sequence is shorter. The elements are not in source order.
+     * @throws [IllegalArgumentException] [count] is negative.
+     */
+    fun sample(count: Int): Enumerable<TSource> = Enumerable(source.sample(count, Random()))
+
+    /**
+     * Draws a reproducible uniform random sample in a single pass, keeping at most [count] elements in memory.
+     * @param [count] The sample size.
+     * @param [seed] The seed of the random generator.
+     * @return An Enumerable that contains [count] elements chosen uniformly at random, or every element if the
+     * sequence is shorter. The elements are not in source order.
+     * @throws [IllegalArgumentException] [count] is negative.
+     */
+    fun sample(count: Int, seed: Long): Enumerable<TSource> = Enumerable(source.sample(count) { Random(seed) })
+
+    /**
+     * Keeps each element independently with the specified probability, streaming without buffering.
+     * @param [probability] The probability of keeping an element.
+     * @return An Enumerable that contains the kept elements in source order.
+     * @throws [IllegalArgumentException] [probability] is outside [0, 1].
+     */
+    fun sampleFraction(probability: Double): Enumerable<TSource> =
+        Enumerable(source.sampleFraction(probability, Random()))
+
+    /**
+     * Keeps each element independently with the specified probability, reproducibly for a given seed.
+     * @param [probability] The probability of keeping an element.
+     * @param [seed] The seed of the random generator.
+     * @return An Enumerable that contains the kept elements in source order.
+     * @throws [IllegalArgumentException] [probability] is outside [0, 1].
+     */
+    fun sampleFraction(probability: Double, seed: Long): Enumerable<TSource> =
+        Enumerable(source.sampleFraction(probability) { Random(seed) })
+
+    /**
+     * Draws a weighted random sample without replacement in a single pass, keeping at most [count] elements in memory.
+     * @param [count] The sample size.
+     * @param [weightSelector] A function returning the non-negative weight of each element; elements with weight 0
+     * are never chosen.
+     * @param [seed] The seed of the random generator.
+     * @return An Enumerable that contains up to [count] elements, each chosen with probability proportional to its weight.
+     * @throws [NullPointerException] [weightSelector] is null.
+     * @throws [IllegalArgumentException] [count] or a weight is negative, or a weight is not finite.
+     */
+    fun sampleWeighted(count: Int, weightSelector: (TSource) -> Double, seed: Long): Enumerable<TSource> =
+        Enumerable(source.sampleWeighted(count, weightSelector) { Random(seed) })
+
     fun single(): TSource = source.single()
 
     fun single(predicate: (TSource) -> Boolean): TSource = source.single(predicate)
@@ -467,8 +1078,57 @@ class Enumerable<TSource> internal constructor(private val source: Sequence<TSou
 
     fun sumDouble(selector: (TSource) -> Double): Double = source.sumOf(selector)
 
+    /**
+     * Computes the sum of a sequence of [Double] values that are obtained by invoking a transform function on each
+     * element of the input sequence, using compensated summation so that rounding errors do not grow with the number
+     * of elements.
+     * @param [selector] A transform function to apply to each element.
+     * @return The sum of the values.
+     * @throws [NullPointerException] [selector] is null.
+     * @see CompensatedSum
+     */
+    fun sumDoubleCompensated(selector: (TSource) -> Double): Double = source.sumCompensated(selector)
+
     fun sumBigDecimal(selector: (TSource) -> BigDecimal): BigDecimal = source.sumOf(selector)
 
+    /**
+     * Computes the sum of a sequence of [BigDecimal] values with at most [scale] fractional digits, such as amounts of
+     * money. The values are summed as `long` units of `10^-scale`, moving to a [java.math.BigInteger] only if that
+     * overflows, so no [BigDecimal] is allocated per element.
+     * @param [selector] A transform function to apply to each element.
+     * @param [scale] The number of fractional digits the values are summed at.
+     * @return The exact sum of the values, at [scale].
+     * @throws [NullPointerException] [selector] is null.
+     * @throws [ArithmeticException] A value has more than [scale] fractional digits.
+     * @see DecimalSum
+     */
+    fun sumBigDecimal(selector: (TSource) -> BigDecimal, scale: Int): BigDecimal = source.sumDecimal(selector, scale)
+
+    /**
+     * Computes the sum of the [Int] values obtained by invoking a [ToIntFunction] on each element, without boxing.
+     * @param [selector] A transform function to apply to each element.
+     * @return The sum of the values.
+     * @throws [NullPointerException] [selector] is null.
+     */
+    fun sumOfInt(selector: ToIntFunction<in TSource>): Int = source.sumOfInt(selector)
+
+    /**
+     * Computes the sum of the [Long] values obtained by invoking a [ToLongFunction] on each element, without boxing.
+     * @param [selector] A transform function to apply to each element.
+     * @return The sum of the values.
+     * @throws [NullPointerException] [selector] is null.
+     */
+    fun sumOfLong(selector: ToLongFunction<in TSource>): Long = source.sumOfLong(selector)
+
+    /**
+     * Computes the sum of the [Double] values obtained by invoking a [ToDoubleFunction] on each element, without
+     * boxing.
+     * @param [selector] A transform function to apply to each element.
+     * @return The sum of the values.
+     * @throws [NullPointerException] [selector] is null.
+     */
+    fun sumOfDouble(selector: ToDoubleFunction<in TSource>): Double = source.sumOfDouble(selector)
+
     fun take(count: Int): Enumerable<TSource> = Enumerable(source.take(count))
 
     fun take(startInclusive: Int, endExclusive: Int): Enumerable<TSource> {
@@ -494,6 +1154,24 @@ class Enumerable<TSource> internal constructor(private val source: Sequence<TSou
     fun where(predicate: (TSource, Int) -> Boolean): Enumerable<TSource> =
         Enumerable(source.filterIndexed { index, source -> predicate(source, index) })
 
+    /**
+     * Filters a sequence of values based on a [Predicate], which returns a primitive `boolean`.
+     * Java lambdas cannot tell this apart from [where], hence the different name.
+     * @param [predicate] A function to test each element for a condition.
+     * @return An [Enumerable] that contains elements from the input sequence that satisfy the condition.
+     * @throws [NullPointerException] [predicate] is null.
+     */
+    fun filter(predicate: Predicate<in TSource>): Enumerable<TSource> = Enumerable(source.where(predicate))
+
+    /**
+     * Filters a sequence of values based on an [IndexedPredicate], which takes the index as a primitive `int`.
+     * @param [predicate] A function to test each element and its index for a condition.
+     * @return An [Enumerable] that contains elements from the input sequence that satisfy the condition.
+     * @throws [NullPointerException] [predicate] is null.
+     */
+    fun filterIndexed(predicate: IndexedPredicate<TSource>): Enumerable<TSource> =
+        Enumerable(source.whereIndexed(predicate))
+
     fun <TOther> zip(other: Iterable<TOther>): Enumerable<Tuple<TSource, TOther>> = Enumerable(source.zip(other))
 
     fun <TOther, TResult> zip(
@@ -501,8 +1179,56 @@ class Enumerable<TSource> internal constructor(private val source: Sequence<TSou
         resultSelector: (TSource, TOther) -> TResult
     ): Enumerable<TResult> = Enumerable(source.zip(other, resultSelector))
 
+    /**
+     * Copies the sequence into an [IndexedCollection], on which hash indexes can be declared.
+     * @return A new [IndexedCollection] holding the elements of the sequence.
+     */
+    fun toIndexedCollection(): IndexedCollection<TSource> = IndexedCollection(this)
+
+    /**
+     * Materializes the sequence through a [QueryCache], so that running the same query again on the same version of
+     * its source reuses the stored result instead of evaluating the sequence.
+     * @param [cache] The cache to use.
+     * @param [queryId] The identity of the query definition.
+     * @param [version] The version of the source the query runs on.
+     * @return An [Enumerable] over the cached result.
+     */
+    fun cached(cache: QueryCache, queryId: Any?, version: Any?): Enumerable<TSource> =
+        cache.getOrPut(queryId, version) { this }
+
+    /**
+     * Copies the sequence into a [LiveCollection], on which queries can be registered and kept up to date as
+     * elements are inserted, updated and deleted.
+     * @return A new [LiveCollection] holding the elements of the sequence.
+     */
+    fun toLiveCollection(): LiveCollection<TSource> = LiveCollection(this)
+
     fun toList(): List<TSource> = source.toMutableList()
 
+    /**
+     * Converts the sequence into an [AsyncEnumerable] whose elements are available immediately, so that it can be
+     * combined with asynchronous operators such as [AsyncEnumerable.selectAwait].
+     * @return An [AsyncEnumerable] that contains the elements of the sequence.
+     */
+    fun toAsyncEnumerable(): AsyncEnumerable<TSource> = AsyncEnumerable { source.asyncIterator() }
+
+    /**
+     * Creates a publisher that emits the elements of the sequence as subscribers request them, iterating on virtual
+     * threads (or daemon threads where the runtime has none).
+     * @return A [Flow.Publisher] over the elements of the sequence.
+     * @see toPublisher
+     */
+    fun toPublisher(): Flow.Publisher<TSource> = toPublisher(Concurrency.executor)
+
+    /**
+     * Creates a publisher that emits the elements of the sequence as subscribers request them. Each subscriber
+     * iterates the sequence separately on [executor], pulling only as many elements as it has requested;
+     * an exception thrown while iterating, or a null element, is signalled through `onError`.
+     * @param [executor] The executor on which elements are pulled and delivered.
+     * @return A [Flow.Publisher] over the elements of the sequence.
+     */
+    fun toPublisher(executor: Executor): Flow.Publisher<TSource> = IterablePublisher(this, executor)
+
     fun <TKey> toLookUp(keySelector: (TSource) -> TKey): LookUp<TKey, TSource> = source.toLookUp(keySelector)
 
     fun <TKey, TElement> toLookUp(
@@ -519,4 +1245,31 @@ class Enumerable<TSource> internal constructor(private val source: Sequence<TSou
     ): Map<TKey, TElement> = source.associateByTo(mutableMapOf(), keySelector, elementSelector)
 
     fun toHashSet(): Set<TSource> = source.toHashSet()
+
+    /**
+     * Writes the sequence to a columnar file that can be read back with [Linq.read].
+     * @param [path] The file to create or overwrite.
+     * @param [schema] The columns to extract from each element.
+     * @throws [IllegalArgumentException] [schema] has no columns.
+     * @throws [java.io.IOException] The file cannot be written.
+     */
+    fun writeTo(path: Path, schema: Schema<TSource>) = source.writeColumnar(path, schema, 65536)
+
+    /**
+     * Writes the sequence to a columnar file that can be read back with [Linq.read].
+     * @param [path] The file to create or overwrite.
+     * @param [schema] The columns to extract from each element.
+     * @param [blockSize] The number of rows per block; each block carries its own min/max statistics.
+     * @throws [IllegalArgumentException] [schema] has no columns or [blockSize] is below 1.
+     * @throws [java.io.IOException] The file cannot be written.
+     */
+    fun writeTo(path: Path, schema: Schema<TSource>, blockSize: Int) = source.writeColumnar(path, schema, blockSize)
+
+    /**
+     * Loads the sequence into an in-memory columnar [Table].
+     * @param [schema] The columns to split each element into.
+     * @return A [Table] holding the columns of every element.
+     * @throws [IllegalArgumentException] [schema] has no columns.
+     */
+    fun toTable(schema: Schema<TSource>): Table = TableBuilder(schema).addAll(this).build()
 }
\ No newline at end of file
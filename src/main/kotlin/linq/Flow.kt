@@ -0,0 +1,196 @@
+package linq
+
+import java.util.concurrent.Executor
+import java.util.concurrent.Flow
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+// queue markers; publishers never emit null
+private val END = Any()
+private val NONE = Any()
+
+/**
+ * Receives the items of a publisher into a queue. It must not reference the iterator, so that an abandoned iterator
+ * can be collected and the subscription cancelled by the cleaner.
+ */
+private class QueueSubscriber<T>(private val queue: LinkedBlockingQueue<Any>, private val demandBatch: Int) :
+    Flow.Subscriber<T>, Runnable {
+    @Volatile
+    private var subscription: Flow.Subscription? = null
+
+    @Volatile
+    private var cancelled = false
+
+    override fun onSubscribe(subscription: Flow.Subscription) {
+        if (this.subscription != null || cancelled) {
+            subscription.cancel()
+            return
+        }
+        this.subscription = subscription
+        subscription.request(demandBatch.toLong())
+    }
+
+    override fun onNext(item: T) {
+        queue.add(item as Any)
+    }
+
+    override fun onError(throwable: Throwable) {
+        queue.add(Failure(throwable))
+    }
+
+    override fun onComplete() {
+        queue.add(END)
+    }
+
+    fun request(n: Long) {
+        subscription?.request(n)
+    }
+
+    override fun run() {
+        cancelled = true
+        subscription?.cancel()
+    }
+}
+
+/**
+ * Returns the items of a publisher, blocking until each arrives. At most `demandBatch` items are requested ahead of
+ * the consumer; demand is replenished in batches of half that size to keep signalling off the hot path.
+ */
+private class PublisherIterator<T>(publisher: Flow.Publisher<T>, demandBatch: Int) : Iterator<T>, AutoCloseable {
+    private val queue = LinkedBlockingQueue<Any>()
+    private val subscriber = QueueSubscriber<T>(queue, demandBatch)
+    private val cleanable = Concurrency.cleaner.register(this, subscriber)
+    private val refill = maxOf(demandBatch / 2, 1)
+    private var consumed = 0
+    private var next: Any? = NONE
+
+    init {
+        publisher.subscribe(subscriber)
+    }
+
+    override fun hasNext(): Boolean {
+        if (next === NONE) next = queue.take()
+        val item = next
+        if (item === END) {
+            close()
+            return false
+        }
+        if (item is Failure) {
+            close()
+            throw item.error
+        }
+        return true
+    }
+
+    override fun next(): T {
+        if (!hasNext()) throw NoSuchElementException()
+        @Suppress("UNCHECKED_CAST")
+        val item = next as T
+        next = NONE
+        if (++consumed == refill) {
+            consumed = 0
+            subscriber.request(refill.toLong())
+        }
+        return item
+    }
+
+    override fun close() {
+        cleanable.clean()
+        next = END
+        queue.clear()
+    }
+}
+
+internal fun <TSource> publisherSequence(publisher: Flow.Publisher<TSource>, demandBatch: Int): Sequence<TSource> {
+    require(demandBatch > 0) { "demandBatch must be positive" }
+    return Sequence { PublisherIterator(publisher, demandBatch) }
+}
+
+/**
+ * Emits the elements of an iterable as requested, draining on the executor. Requests and cancellation may arrive
+ * from any thread; the drain loop itself never runs concurrently with another drain of the same subscription.
+ */
+private class IterableSubscription<T>(
+    private val source: Iterable<T>,
+    private val subscriber: Flow.Subscriber<in T>,
+    private val executor: Executor
+) : Flow.Subscription, Runnable {
+    private val demand = AtomicLong()
+    private val pending = AtomicInteger()
+    private var iterator: Iterator<T>? = null
+
+    @Volatile
+    private var cancelled = false
+
+    @Volatile
+    private var error: Throwable? = null
+
+    override fun request(n: Long) {
+        if (n <= 0) {
+            error = IllegalArgumentException("request must be positive, was $n")
+        } else {
+            demand.getAndAccumulate(n) { current, added ->
+                if (current == Long.MAX_VALUE || added >= Long.MAX_VALUE - current) Long.MAX_VALUE else current + added
+            }
+        }
+        schedule()
+    }
+
+    override fun cancel() {
+        cancelled = true
+    }
+
+    private fun schedule() {
+        if (pending.getAndIncrement() != 0) return
+        try {
+            executor.execute(this)
+        } catch (e: RejectedExecutionException) {
+            cancelled = true
+            subscriber.onError(e)
+        }
+    }
+
+    override fun run() {
+        var missed = 1
+        do {
+            drain()
+            missed = pending.addAndGet(-missed)
+        } while (missed != 0)
+    }
+
+    private fun drain() {
+        if (cancelled) return
+        error?.let {
+            cancelled = true
+            subscriber.onError(it)
+            return
+        }
+        try {
+            val iterator = iterator ?: source.iterator().also { iterator = it }
+            while (!cancelled && demand.get() > 0) {
+                if (!iterator.hasNext()) {
+                    cancelled = true
+                    subscriber.onComplete()
+                    return
+                }
+                val item = iterator.next() ?: throw NullPointerException("publishers cannot emit null")
+                if (demand.get() != Long.MAX_VALUE) demand.decrementAndGet()
+                subscriber.onNext(item)
+            }
+        } catch (e: Throwable) {
+            if (!cancelled) {
+                cancelled = true
+                subscriber.onError(e)
+            }
+        }
+    }
+}
+
+internal class IterablePublisher<T>(private val source: Iterable<T>, private val executor: Executor) :
+    Flow.Publisher<T> {
+    override fun subscribe(subscriber: Flow.Subscriber<in T>) {
+        subscriber.onSubscribe(IterableSubscription(source, subscriber, executor))
+    }
+}
@@ -0,0 +1,42 @@
+package linq
+
+/**
+ * 64-bit hashing shared by the probabilistic sketches. Strings, numbers and byte arrays are hashed from their content
+ * so that estimates are stable across processes; other values are spread from [Any.hashCode].
+ */
+internal object Hashing {
+    fun hash64(value: Any?): Long = when (value) {
+        null -> mix64(0x5DEECE66DL)
+        is String -> {
+            var h = -0x340d631b7bdddcdbL
+            for (i in value.indices) h = (h xor value[i].code.toLong()) * 0x100000001b3L
+            mix64(h)
+        }
+
+        is Long -> mix64(value)
+        is Int -> mix64(value.toLong())
+        is Short -> mix64(value.toLong())
+        is Byte -> mix64(value.toLong())
+        is Char -> mix64(value.code.toLong())
+        is Double -> mix64(value.toRawBits())
+        is Float -> mix64(value.toRawBits().toLong())
+        is ByteArray -> {
+            var h = -0x340d631b7bdddcdbL
+            for (b in value) h = (h xor (b.toLong() and 0xFF)) * 0x100000001b3L
+            mix64(h)
+        }
+
+        else -> mix64(value.hashCode().toLong())
+    }
+
+    // the murmur3 64-bit finalizer
+    fun mix64(value: Long): Long {
+        var h = value
+        h = h xor (h ushr 33)
+        h *= -0xae502812aa7333L
+        h = h xor (h ushr 33)
+        h *= -0x3b314601e57a13adL
+        h = h xor (h ushr 33)
+        return h
+    }
+}
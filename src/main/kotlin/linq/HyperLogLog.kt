@@ -0,0 +1,138 @@
+package linq
+
+import java.io.Serializable
+import java.nio.ByteBuffer
+import java.util.AbstractMap
+
+/**
+ * A HyperLogLog sketch estimating the number of distinct values in fixed memory of `2^precision` bytes.
+ * The relative standard error is about `1.04 / sqrt(2^precision)`.
+ *
+ * Sketches with the same precision can be merged, so partial sketches built over separate partitions combine into
+ * the sketch of the whole input.
+ */
+class HyperLogLog(val precision: Int) : Serializable {
+    private val registers: ByteArray
+
+    init {
+        require(precision in MIN_PRECISION..MAX_PRECISION) {
+            "precision must be between $MIN_PRECISION and $MAX_PRECISION"
+        }
+        registers = ByteArray(1 shl precision)
+    }
+
+    /**
+     * Adds a value to the sketch.
+     * @param [value] The value to add; null is counted as a value of its own.
+     * @return This sketch.
+     */
+    fun add(value: Any?): HyperLogLog {
+        addHash(Hashing.hash64(value))
+        return this
+    }
+
+    /**
+     * Adds a precomputed, well-mixed 64-bit hash to the sketch.
+     * @param [hash] The hash of the value.
+     * @return This sketch.
+     */
+    fun addHash(hash: Long): HyperLogLog {
+        val index = (hash ushr (64 - precision)).toInt()
+        // the guard bit bounds the rank when all remaining bits are zero
+        val rank = java.lang.Long.numberOfLeadingZeros((hash shl precision) or (1L shl (precision - 1))) + 1
+        if (rank > registers[index]) registers[index] = rank.toByte()
+        return this
+    }
+
+    /**
+     * Merges another sketch into this one.
+     * @param [other] A sketch with the same precision.
+     * @return This sketch.
+     * @throws [IllegalArgumentException] [other] has a different precision.
+     */
+    fun merge(other: HyperLogLog): HyperLogLog {
+        require(other.precision == precision) { "cannot merge sketches of precision $precision and ${other.precision}" }
+        for (i in registers.indices) {
+            if (other.registers[i] > registers[i]) registers[i] = other.registers[i]
+        }
+        return this
+    }
+
+    /**
+     * Estimates the number of distinct values added to the sketch.
+     * @return The estimated cardinality.
+     */
+    fun estimate(): Long {
+        val m = registers.size
+        var sum = 0.0
+        var zeros = 0
+        for (register in registers) {
+            sum += 1.0 / (1L shl register.toInt())
+            if (register.toInt() == 0) zeros++
+        }
+        val alpha = when (m) {
+            16 -> 0.673
+            32 -> 0.697
+            64 -> 0.709
+            else -> 0.7213 / (1 + 1.079 / m)
+        }
+        val raw = alpha * m * m / sum
+        // linear counting is more accurate while many registers are still empty
+        if (raw <= 2.5 * m && zeros > 0) {
+            return Math.round(m * Math.log(m.toDouble() / zeros))
+        }
+        return Math.round(raw)
+    }
+
+    /**
+     * Serializes the sketch into a compact byte array.
+     * @return The precision followed by the registers.
+     */
+    fun toByteArray(): ByteArray = ByteBuffer.allocate(1 + registers.size).put(precision.toByte()).put(registers).array()
+
+    companion object {
+        private const val serialVersionUID = 1L
+        const val MIN_PRECISION = 4
+        const val MAX_PRECISION = 18
+
+        /**
+         * Restores a sketch serialized by [toByteArray].
+         * @param [bytes] The serialized sketch.
+         * @return The restored sketch.
+         * @throws [IllegalArgumentException] [bytes] is not a serialized sketch.
+         */
+        @JvmStatic
+        fun fromByteArray(bytes: ByteArray): HyperLogLog {
+            require(bytes.isNotEmpty()) { "empty sketch" }
+            val sketch = HyperLogLog(bytes[0].toInt())
+            require(bytes.size == 1 + sketch.registers.size) { "sketch size does not match its precision" }
+            bytes.copyInto(sketch.registers, 0, 1)
+            return sketch
+        }
+    }
+}
+
+fun <TSource, TKey> Sequence<TSource>.countDistinctApprox(keySelector: (TSource) -> TKey, precision: Int): Long {
+    val sketch = HyperLogLog(precision)
+    for (element in this) {
+        sketch.add(keySelector(element))
+    }
+    return sketch.estimate()
+}
+
+fun <TSource, TKey, TValue> Sequence<TSource>.countDistinctApproxBy(
+    groupKey: (TSource) -> TKey,
+    valueKey: (TSource) -> TValue,
+    precision: Int
+): Sequence<Map.Entry<TKey, Long>> {
+    require(precision in HyperLogLog.MIN_PRECISION..HyperLogLog.MAX_PRECISION) {
+        "precision must be between ${HyperLogLog.MIN_PRECISION} and ${HyperLogLog.MAX_PRECISION}"
+    }
+    return sequence {
+        val sketches = this@countDistinctApproxBy.groupingBy(groupKey)
+            .fold({ _, _ -> HyperLogLog(precision) }) { _, sketch, element -> sketch.add(valueKey(element)) }
+        for (entry in sketches) {
+            yield(AbstractMap.SimpleImmutableEntry(entry.key, entry.value.estimate()))
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package linq
+
+import java.util.NavigableMap
+import java.util.TreeMap
+
+/**
+ * A secondary index kept up to date by an [IndexedCollection].
+ */
+internal interface CollectionIndex<TSource> {
+    fun add(element: TSource)
+
+    fun remove(element: TSource)
+}
+
+/**
+ * A hash index mapping each key to the elements of an [IndexedCollection] that have it, so that equality lookups and
+ * joins on the key read one bucket instead of scanning the collection. Buckets are multisets like the collection
+ * itself, so removing an element takes constant time however many elements share its key.
+ */
+class HashIndex<TSource, TKey> internal constructor(private val keySelector: (TSource) -> TKey) :
+    CollectionIndex<TSource> {
+    private val buckets = HashMap<TKey, Multiset<TSource>>()
+
+    override fun add(element: TSource) {
+        buckets.getOrPut(keySelector(element)) { Multiset() }.add(element)
+    }
+
+    override fun remove(element: TSource) {
+        val key = keySelector(element)
+        val bucket = buckets[key] ?: return
+        bucket.remove(element)
+        if (bucket.isEmpty()) buckets.remove(key)
+    }
+
+    /**
+     * The number of distinct keys.
+     */
+    val keyCount: Int get() = buckets.size
+
+    /**
+     * Returns the elements that have a key, as of when the result is iterated. Each iteration reads a snapshot of
+     * the bucket, so the collection may be modified while iterating.
+     * @param [key] The key to look up.
+     * @return An [Enumerable] of the matching elements, in insertion order.
+     */
+    fun get(key: TKey): Enumerable<TSource> = Enumerable(Sequence { lookup(key).toList().iterator() })
+
+    internal fun lookup(key: TKey): Iterable<TSource> = buckets[key] ?: emptyList()
+}
+
+/**
+ * A sorted index keeping the elements of an [IndexedCollection] ordered by a key, so that range queries take
+ * O(log n + k) for k results, ordering by the key needs no sort, and pages can be fetched by key (keyset pagination).
+ * Results are evaluated lazily when iterated, so taking the first few elements of a range reads only those; modifying
+ * the collection during such an iteration makes it throw [ConcurrentModificationException].
+ */
+class SortedIndex<TSource, TKey> internal constructor(
+    private val keySelector: (TSource) -> TKey,
+    comparator: Comparator<in TKey>
+) : CollectionIndex<TSource> {
+    private val tree = TreeMap<TKey, Multiset<TSource>>(comparator)
+
+    override fun add(element: TSource) {
+        tree.getOrPut(keySelector(element)) { Multiset() }.add(element)
+    }
+
+    override fun remove(element: TSource) {
+        val key = keySelector(element)
+        val bucket = tree[key] ?: return
+        bucket.remove(element)
+        if (bucket.isEmpty()) tree.remove(key)
+    }
+
+    private fun elements(map: () -> NavigableMap<TKey, Multiset<TSource>>): Enumerable<TSource> =
+        Enumerable(Sequence { map().values.asSequence().flatten().iterator() })
+
+    /**
+     * Returns the elements ordered by key, without sorting. Elements with equal keys are in insertion order.
+     * @return An [Enumerable] of the elements in ascending key order.
+     */
+    fun ascending(): Enumerable<TSource> = elements { tree }
+
+    /**
+     * Returns the elements in descending key order, without sorting.
+     * @return An [Enumerable] of the elements in descending key order.
+     */
+    fun descending(): Enumerable<TSource> = elements { tree.descendingMap() }
+
+    /**
+     * Returns the elements whose key lies between two keys.
+     * @param [from] The lower bound.
+     * @param [fromInclusive] Whether keys equal to [from] are included.
+     * @param [to] The upper bound.
+     * @param [toInclusive] Whether keys equal to [to] are included.
+     * @return An [Enumerable] of the matching elements in ascending key order.
+     * @throws [IllegalArgumentException] [from] is greater than [to].
+     */
+    fun range(from: TKey, fromInclusive: Boolean, to: TKey, toInclusive: Boolean): Enumerable<TSource> {
+        require(tree.comparator().compare(from, to) <= 0) { "from must not be greater than to" }
+        return elements { tree.subMap(from, fromInclusive, to, toInclusive) }
+    }
+
+    /**
+     * Returns the elements whose key lies between [min] and [max] inclusive.
+     * @param [min] The lower bound.
+     * @param [max] The upper bound.
+     * @return An [Enumerable] of the matching elements in ascending key order.
+     * @throws [IllegalArgumentException] [min] is greater than [max].
+     */
+    fun between(min: TKey, max: TKey): Enumerable<TSource> = range(min, true, max, true)
+
+    /**
+     * Returns the elements whose key is greater than [key], in ascending order: the page following [key] in
+     * keyset pagination, used as `after(lastKeyOfPage).take(pageSize)`. All elements with a key equal to [key] are
+     * skipped, so the key should be unique for pages not to lose elements.
+     * @param [key] The last key of the previous page.
+     * @return An [Enumerable] of the elements after [key] in ascending key order.
+     */
+    fun after(key: TKey): Enumerable<TSource> = elements { tree.tailMap(key, false) }
+
+    /**
+     * Returns the elements whose key is less than [key], in descending order: the page preceding [key] in keyset
+     * pagination.
+     * @param [key] The first key of the following page.
+     * @return An [Enumerable] of the elements before [key] in descending key order.
+     */
+    fun before(key: TKey): Enumerable<TSource> = elements { tree.headMap(key, false).descendingMap() }
+
+    /**
+     * @return The smallest key.
+     * @throws [NoSuchElementException] The index is empty.
+     */
+    fun firstKey(): TKey = tree.firstKey()
+
+    /**
+     * @return The largest key.
+     * @throws [NoSuchElementException] The index is empty.
+     */
+    fun lastKey(): TKey = tree.lastKey()
+}
+
+/**
+ * A mutable collection with secondary indexes that are maintained as elements are added and removed.
+ * Elements are kept as a multiset: adding an element again counts it again, and iteration returns each element as
+ * many times as it was added. Equal elements are represented by the instance added first, in the collection and in
+ * its indexes alike.
+ */
+class IndexedCollection<TSource>() : Iterable<TSource> {
+    private val elements = Multiset<TSource>()
+    private val indexes = ArrayList<CollectionIndex<TSource>>()
+
+    /**
+     * The number of elements, counting repeated elements as often as they were added.
+     */
+    val size: Int get() = elements.size
+
+    constructor(elements: Iterable<TSource>) : this() {
+        addAll(elements)
+    }
+
+    override fun iterator(): Iterator<TSource> = elements.iterator()
+
+    /**
+     * @return An [Enumerable] over the elements, for queries that no index can answer.
+     */
+    fun asEnumerable(): Enumerable<TSource> = Enumerable(asSequence())
+
+    /**
+     * Adds an element and updates every index.
+     * @param [element] The element to add.
+     * @return This collection.
+     */
+    fun add(element: TSource): IndexedCollection<TSource> {
+        elements.add(element)
+        indexes.forEach { it.add(element) }
+        return this
+    }
+
+    /**
+     * Adds every element of a sequence.
+     * @param [elements] The elements to add.
+     * @return This collection.
+     */
+    fun addAll(elements: Iterable<TSource>): IndexedCollection<TSource> {
+        elements.forEach { add(it) }
+        return this
+    }
+
+    /**
+     * Removes one occurrence of an element and updates every index. The element's keys must not have changed since
+     * it was added.
+     * @param [element] The element to remove.
+     * @return `true` if the element was present.
+     */
+    fun remove(element: TSource): Boolean {
+        if (!elements.remove(element)) return false
+        indexes.forEach { it.remove(element) }
+        return true
+    }
+
+    /**
+     * Determines whether the collection contains an element, in constant time.
+     * @param [element] The element to look for.
+     * @return `true` if the element is present.
+     */
+    fun contains(element: TSource): Boolean = elements.contains(element)
+
+    /**
+     * Declares a hash index on a key, built from the current elements and maintained from then on.
+     * @param [keySelector] A function to extract the key from each element; keys must not change while the element
+     * is in the collection.
+     * @return The index, to be passed to [where] or [Enumerable.join].
+     */
+    fun <TKey> withIndex(keySelector: (TSource) -> TKey): HashIndex<TSource, TKey> = register(HashIndex(keySelector))
+
+    /**
+     * Declares a sorted index on a comparable key, built from the current elements and maintained from then on.
+     * @param [keySelector] A function to extract the key from each element; keys must not change while the element
+     * is in the collection.
+     * @return The index, whose range, ordering and pagination queries read the index instead of scanning.
+     */
+    fun <TKey : Comparable<TKey>> withSortedIndex(keySelector: (TSource) -> TKey): SortedIndex<TSource, TKey> =
+        register(SortedIndex(keySelector, naturalOrder()))
+
+    /**
+     * Declares a sorted index on a key ordered by [comparator], built from the current elements and maintained from
+     * then on.
+     * @param [keySelector] A function to extract the key from each element; keys must not change while the element
+     * is in the collection.
+     * @param [comparator] The order of the keys.
+     * @return The index, whose range, ordering and pagination queries read the index instead of scanning.
+     */
+    fun <TKey> withSortedIndex(keySelector: (TSource) -> TKey, comparator: Comparator<in TKey>): SortedIndex<TSource, TKey> =
+        register(SortedIndex(keySelector, comparator))
+
+    internal fun <TIndex : CollectionIndex<TSource>> register(index: TIndex): TIndex {
+        for (element in this) index.add(element)
+        indexes.add(index)
+        return index
+    }
+
+    /**
+     * Returns the elements whose key equals [key], reading one bucket of [index] instead of scanning.
+     * @param [index] An index declared on this collection.
+     * @param [key] The key to look up.
+     * @return An [Enumerable] of the matching elements, evaluated when iterated.
+     * @throws [IllegalArgumentException] [index] belongs to another collection.
+     */
+    fun <TKey> where(index: HashIndex<TSource, TKey>, key: TKey): Enumerable<TSource> {
+        require(indexes.contains(index)) { "index does not belong to this collection" }
+        return index.get(key)
+    }
+
+    /**
+     * Returns the elements whose key lies between [min] and [max] inclusive, reading a range of [index] instead of
+     * scanning.
+     * @param [index] A sorted index declared on this collection.
+     * @param [min] The lower bound.
+     * @param [max] The upper bound.
+     * @return An [Enumerable] of the matching elements in ascending key order, evaluated when iterated.
+     * @throws [IllegalArgumentException] [index] belongs to another collection, or [min] is greater than [max].
+     */
+    fun <TKey> where(index: SortedIndex<TSource, TKey>, min: TKey, max: TKey): Enumerable<TSource> {
+        require(indexes.contains(index)) { "index does not belong to this collection" }
+        return index.between(min, max)
+    }
+
+    /**
+     * Returns the elements ordered by the key of [index], without sorting.
+     * @param [index] A sorted index declared on this collection.
+     * @return An [Enumerable] of the elements in ascending key order, evaluated when iterated.
+     * @throws [IllegalArgumentException] [index] belongs to another collection.
+     */
+    fun <TKey> orderBy(index: SortedIndex<TSource, TKey>): Enumerable<TSource> {
+        require(indexes.contains(index)) { "index does not belong to this collection" }
+        return index.ascending()
+    }
+}
@@ -0,0 +1,131 @@
+package linq
+
+import java.util.function.Predicate
+import java.util.function.ToDoubleFunction
+import java.util.function.ToIntFunction
+import java.util.function.ToLongFunction
+
+/**
+ * A function of an element and its index, taking the index as a primitive `int`.
+ */
+fun interface IndexedFunction<in T, out R> {
+    fun apply(element: T, index: Int): R
+}
+
+/**
+ * A predicate on an element and its index, taking the index as a primitive `int` and returning a primitive
+ * `boolean`.
+ */
+fun interface IndexedPredicate<in T> {
+    fun test(element: T, index: Int): Boolean
+}
+
+fun <TSource> Sequence<TSource>.where(predicate: Predicate<in TSource>): Sequence<TSource> {
+    val source = this
+    return Sequence {
+        val iterator = source.iterator()
+        object : AbstractIterator<TSource>() {
+            override fun computeNext() {
+                while (iterator.hasNext()) {
+                    val element = iterator.next()
+                    if (predicate.test(element)) {
+                        setNext(element)
+                        return
+                    }
+                }
+                done()
+            }
+        }
+    }
+}
+
+fun <TSource> Sequence<TSource>.whereIndexed(predicate: IndexedPredicate<TSource>): Sequence<TSource> {
+    val source = this
+    return Sequence {
+        val iterator = source.iterator()
+        object : AbstractIterator<TSource>() {
+            private var index = 0
+
+            override fun computeNext() {
+                while (iterator.hasNext()) {
+                    val element = iterator.next()
+                    if (predicate.test(element, index++)) {
+                        setNext(element)
+                        return
+                    }
+                }
+                done()
+            }
+        }
+    }
+}
+
+fun <TSource, TResult> Sequence<TSource>.selectIndexed(
+    selector: IndexedFunction<TSource, TResult>
+): Sequence<TResult> {
+    val source = this
+    return Sequence {
+        val iterator = source.iterator()
+        object : Iterator<TResult> {
+            private var index = 0
+
+            override fun hasNext(): Boolean = iterator.hasNext()
+
+            override fun next(): TResult = selector.apply(iterator.next(), index++)
+        }
+    }
+}
+
+fun <TSource> Sequence<TSource>.sumOfInt(selector: ToIntFunction<in TSource>): Int {
+    var sum = 0
+    for (element in this) {
+        sum += selector.applyAsInt(element)
+    }
+    return sum
+}
+
+fun <TSource> Sequence<TSource>.sumOfLong(selector: ToLongFunction<in TSource>): Long {
+    var sum = 0L
+    for (element in this) {
+        sum += selector.applyAsLong(element)
+    }
+    return sum
+}
+
+fun <TSource> Sequence<TSource>.sumOfDouble(selector: ToDoubleFunction<in TSource>): Double {
+    var sum = 0.0
+    for (element in this) {
+        sum += selector.applyAsDouble(element)
+    }
+    return sum
+}
+
+fun <TSource> Sequence<TSource>.averageOfInt(selector: ToIntFunction<in TSource>): Double {
+    var sum = 0.0
+    var count = 0
+    for (element in this) {
+        sum += selector.applyAsInt(element)
+        count = Math.addExact(count, 1)
+    }
+    return if (count == 0) Double.NaN else sum / count
+}
+
+fun <TSource> Sequence<TSource>.averageOfLong(selector: ToLongFunction<in TSource>): Double {
+    var sum = 0.0
+    var count = 0
+    for (element in this) {
+        sum += selector.applyAsLong(element)
+        count = Math.addExact(count, 1)
+    }
+    return if (count == 0) Double.NaN else sum / count
+}
+
+fun <TSource> Sequence<TSource>.averageOfDouble(selector: ToDoubleFunction<in TSource>): Double {
+    var sum = 0.0
+    var count = 0
+    for (element in this) {
+        sum += selector.applyAsDouble(element)
+        count = Math.addExact(count, 1)
+    }
+    return if (count == 0) Double.NaN else sum / count
+}
@@ -84,4 +84,103 @@ fun <TOuter, TInner, TKey, TResult> Sequence<TOuter>.groupJoin(
             yield(resultSelector(item, lookUp[outerKeySelector(item)]))
         } while (iterator.hasNext())
     }
-}
\ No newline at end of file
+}
+
+/**
+ * One input of a symmetric hash join: a hash table of the retained elements plus their arrival order for eviction.
+ */
+private class JoinSide<TElement, TKey>(
+    private val keySelector: (TElement) -> TKey,
+    private val timestampSelector: ((TElement) -> Long)?
+) {
+    private val table = HashMap<TKey, ArrayDeque<TElement>>()
+    private val arrivals = ArrayDeque<TElement>()
+
+    fun keyOf(element: TElement): TKey = keySelector(element)
+
+    fun timestampOf(element: TElement): Long = timestampSelector!!(element)
+
+    fun matches(key: TKey): Collection<TElement> = table[key] ?: emptyList()
+
+    fun insert(key: TKey, element: TElement) {
+        table.getOrPut(key) { ArrayDeque() }.addLast(element)
+        arrivals.addLast(element)
+    }
+
+    // per-key queues are in arrival order too, so the oldest element is always at the head of its queue
+    private fun evictOldest() {
+        val element = arrivals.removeFirst()
+        val key = keySelector(element)
+        val queue = table.getValue(key)
+        queue.removeFirst()
+        if (queue.isEmpty()) table.remove(key)
+    }
+
+    fun evictBeyond(count: Long) {
+        while (arrivals.size > count) evictOldest()
+    }
+
+    fun evictBefore(timestamp: Long) {
+        while (arrivals.isNotEmpty() && timestampOf(arrivals.first()) < timestamp) evictOldest()
+    }
+}
+
+internal fun <TOuter, TInner, TKey, TResult> Sequence<TOuter>.symmetricJoin(
+    inner: Iterable<TInner>,
+    outerKeySelector: (TOuter) -> TKey,
+    innerKeySelector: (TInner) -> TKey,
+    outerTimestampSelector: ((TOuter) -> Long)?,
+    innerTimestampSelector: ((TInner) -> Long)?,
+    retention: Long,
+    resultSelector: (TOuter, TInner) -> TResult
+): Sequence<TResult> = sequence {
+    val timed = outerTimestampSelector != null
+    val outerSide = JoinSide(outerKeySelector, outerTimestampSelector)
+    val innerSide = JoinSide(innerKeySelector, innerTimestampSelector)
+    val outerIterator = this@symmetricJoin.iterator()
+    val innerIterator = inner.iterator()
+    var outerDone = false
+    var innerDone = false
+    var pullOuter = true
+    while (!outerDone || !innerDone) {
+        if (pullOuter && !outerDone) {
+            if (outerIterator.hasNext()) {
+                val item = outerIterator.next()
+                val key = outerSide.keyOf(item)
+                val timestamp = if (timed) outerSide.timestampOf(item) else 0
+                if (timed) innerSide.evictBefore(timestamp - retention)
+                for (match in innerSide.matches(key)) {
+                    if (!timed || Math.abs(innerSide.timestampOf(match) - timestamp) <= retention) {
+                        yield(resultSelector(item, match))
+                    }
+                }
+                // once a side is exhausted, the other side no longer needs to be retained
+                if (!innerDone) {
+                    outerSide.insert(key, item)
+                    if (!timed) outerSide.evictBeyond(retention)
+                }
+            } else {
+                outerDone = true
+            }
+        } else if (!innerDone) {
+            if (innerIterator.hasNext()) {
+                val item = innerIterator.next()
+                val key = innerSide.keyOf(item)
+                val timestamp = if (timed) innerSide.timestampOf(item) else 0
+                if (timed) outerSide.evictBefore(timestamp - retention)
+                for (match in outerSide.matches(key)) {
+                    if (!timed || Math.abs(outerSide.timestampOf(match) - timestamp) <= retention) {
+                        yield(resultSelector(match, item))
+                    }
+                }
+                if (!outerDone) {
+                    innerSide.insert(key, item)
+                    if (!timed) innerSide.evictBeyond(retention)
+                }
+            } else {
+                innerDone = true
+            }
+        }
+        pullOuter = !pullOuter
+    }
+}
@@ -1,5 +1,9 @@
 package linq
 
+import java.io.InputStream
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.concurrent.Flow
 import java.util.stream.DoubleStream
 import java.util.stream.IntStream
 import java.util.stream.LongStream
@@ -20,12 +24,44 @@ object Linq {
     @JvmStatic
     fun of(source: ShortArray): Enumerable<Short> = Enumerable(source.asSequence())
 
+    /**
+     * Creates an [Enumerable] over the boxed elements of an array. Use [ofInts] for aggregates that run over the
+     * array without boxing.
+     */
     @JvmStatic
     fun of(source: IntArray): Enumerable<Int> = Enumerable(source.asSequence())
 
+    /**
+     * Creates an [Enumerable] over the boxed elements of an array. Use [ofLongs] for aggregates that run over the
+     * array without boxing.
+     */
     @JvmStatic
     fun of(source: LongArray): Enumerable<Long> = Enumerable(source.asSequence())
 
+    /**
+     * Creates an [IntEnumerable] over a primitive array, whose aggregates run without boxing.
+     * @param [source] The array; it is not copied, so it must not be modified while being queried.
+     * @return An [IntEnumerable] over [source].
+     */
+    @JvmStatic
+    fun ofInts(vararg source: Int): IntEnumerable = IntEnumerable(source)
+
+    /**
+     * Creates a [LongEnumerable] over a primitive array, whose aggregates run without boxing.
+     * @param [source] The array; it is not copied, so it must not be modified while being queried.
+     * @return A [LongEnumerable] over [source].
+     */
+    @JvmStatic
+    fun ofLongs(vararg source: Long): LongEnumerable = LongEnumerable(source)
+
+    /**
+     * Creates a [DoubleEnumerable] over a primitive array, whose aggregates run without boxing.
+     * @param [source] The array; it is not copied, so it must not be modified while being queried.
+     * @return A [DoubleEnumerable] over [source].
+     */
+    @JvmStatic
+    fun ofDoubles(vararg source: Double): DoubleEnumerable = DoubleEnumerable(source)
+
     @JvmStatic
     fun <TSource> of(source: Iterable<TSource>) = Enumerable(source.asSequence())
 
@@ -40,4 +76,97 @@ object Linq {
 
     @JvmStatic
     fun <TSource> of(source: DoubleStream) = Enumerable(source.asSequence())
-}
\ No newline at end of file
+
+    /**
+     * Creates an [Enumerable] over the items of a publisher, blocking the consumer until each item arrives.
+     * Each iteration subscribes anew and keeps at most [demandBatch] items requested ahead of the consumer, so a
+     * fast publisher is held back instead of buffered without bound. An error signalled by the publisher is rethrown
+     * to the consumer; closing the iterator through [AutoCloseable] cancels the subscription.
+     * @param [source] The publisher.
+     * @param [demandBatch] The maximum number of items requested ahead of the consumer.
+     * @return An [Enumerable] that contains the items of [source] in the order they are published.
+     * @throws [IllegalArgumentException] [demandBatch] is below 1.
+     */
+    @JvmStatic
+    fun <TSource> of(source: Flow.Publisher<TSource>, demandBatch: Int): Enumerable<TSource> =
+        Enumerable(publisherSequence(source, demandBatch))
+
+    /**
+     * Creates an [AsyncEnumerable] that obtains a fresh [AsyncIterator] from [source] for every iteration.
+     * @param [source] A function creating the iterator, for example one fetching a remote page per [AsyncIterator.moveNext].
+     * @return An [AsyncEnumerable] over the elements returned by the iterators.
+     */
+    @JvmStatic
+    fun <TSource> ofAsync(source: () -> AsyncIterator<TSource>): AsyncEnumerable<TSource> = AsyncEnumerable(source)
+
+    /**
+     * Streams the records of a delimited file. The file is opened on each enumeration and closed once the iterator is
+     * exhausted or closed through [AutoCloseable]. Operators that stop early, such as [Enumerable.first],
+     * [Enumerable.any] or [Enumerable.take], or an exception thrown downstream, leave the file open until the abandoned
+     * iterator is garbage collected, so use this overload only for queries that read the whole file. For partial
+     * reads, open the file yourself and pass the stream to the [InputStream] overload inside try-with-resources.
+     * @param [path] The file to read.
+     * @param [delimiter] The single-byte field separator.
+     * @param [skipHeader] Whether the first record is a header and should be skipped.
+     * @param [columns] The zero-based source columns to project, in output order; all columns when empty.
+     * @return An [Enumerable] of a reused [DelimitedRow] view, valid until the next element is requested.
+     * @throws [IllegalArgumentException] [delimiter] is not a single-byte character, or is a quote or line break.
+     */
+    @JvmStatic
+    fun ofDelimited(path: Path, delimiter: Char, skipHeader: Boolean, vararg columns: Int): Enumerable<DelimitedRow> =
+        Enumerable(delimitedSequence({ Files.newInputStream(path) }, delimiter, skipHeader, columns))
+
+    /**
+     * Streams the records of a delimited input. The input can only be enumerated once and is closed once it is exhausted.
+     * @param [input] The input to read.
+     * @param [delimiter] The single-byte field separator.
+     * @param [skipHeader] Whether the first record is a header and should be skipped.
+     * @param [columns] The zero-based source columns to project, in output order; all columns when empty.
+     * @return An [Enumerable] of a reused [DelimitedRow] view, valid until the next element is requested.
+     * @throws [IllegalArgumentException] [delimiter] is not a single-byte character, or is a quote or line break.
+     */
+    @JvmStatic
+    fun ofDelimited(
+        input: InputStream,
+        delimiter: Char,
+        skipHeader: Boolean,
+        vararg columns: Int
+    ): Enumerable<DelimitedRow> =
+        Enumerable(delimitedSequence({ input }, delimiter, skipHeader, columns).constrainOnce())
+
+    /**
+     * Streams the records of a comma-separated file. The file is only closed promptly when the result is read to the
+     * end; for partial reads, use the [InputStream] overload of [ofDelimited].
+     * @see [ofDelimited]
+     */
+    @JvmStatic
+    fun ofCsv(path: Path, skipHeader: Boolean, vararg columns: Int): Enumerable<DelimitedRow> =
+        ofDelimited(path, ',', skipHeader, *columns)
+
+    /**
+     * Streams the records of a tab-separated file. The file is only closed promptly when the result is read to the
+     * end; for partial reads, use the [InputStream] overload of [ofDelimited].
+     * @see [ofDelimited]
+     */
+    @JvmStatic
+    fun ofTsv(path: Path, skipHeader: Boolean, vararg columns: Int): Enumerable<DelimitedRow> =
+        ofDelimited(path, '\t', skipHeader, *columns)
+
+    /**
+     * Opens a columnar file written by [Enumerable.writeTo].
+     * @param [path] The file to open.
+     * @return A [ColumnarFile] view over every column of the file.
+     * @throws [java.io.IOException] The file is not a columnar file or cannot be read.
+     */
+    @JvmStatic
+    fun read(path: Path): ColumnarFile = ColumnarFile.open(path)
+
+    /**
+     * Creates a builder loading elements into an in-memory columnar [Table].
+     * @param [schema] The columns to split each element into.
+     * @return An empty [TableBuilder].
+     * @throws [IllegalArgumentException] [schema] has no columns.
+     */
+    @JvmStatic
+    fun <TSource> table(schema: Schema<TSource>): TableBuilder<TSource> = TableBuilder(schema)
+}
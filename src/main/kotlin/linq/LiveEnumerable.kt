@@ -0,0 +1,344 @@
+package linq
+
+import java.util.AbstractMap
+
+/**
+ * Receives the changes of a [LiveEnumerable]. An update is delivered as the deletion of the old element followed by
+ * the insertion of the new one.
+ */
+interface LiveListener<in T> {
+    fun inserted(element: T)
+
+    fun deleted(element: T)
+}
+
+/**
+ * A query result kept up to date as its source changes. Each operator turns the changes of its input into changes of
+ * its output, so refreshing a registered query costs time proportional to the number of changes rather than to the
+ * size of the source.
+ *
+ * Every registered query keeps its current result, so reading it costs time proportional to the result rather than
+ * to the source. Deletions are propagated by value: projections and join results of a deleted element must be equal
+ * to those produced when it was inserted.
+ */
+abstract class LiveEnumerable<TSource> internal constructor() : Iterable<TSource> {
+    private val listeners = ArrayList<LiveListener<TSource>>()
+    private val subscriptions = ArrayList<() -> Unit>()
+
+    /**
+     * Whether this query follows other queries, so that closing it can close them too.
+     */
+    internal open val derived: Boolean get() = true
+
+    /**
+     * Registers a listener for the changes of this query.
+     * @param [listener] The listener.
+     */
+    fun subscribe(listener: LiveListener<TSource>) {
+        listeners.add(listener)
+    }
+
+    /**
+     * Removes a listener registered with [subscribe].
+     * @param [listener] The listener.
+     */
+    fun unsubscribe(listener: LiveListener<TSource>) {
+        listeners.remove(listener)
+    }
+
+    internal fun emitInserted(element: TSource) {
+        for (i in listeners.indices) listeners[i].inserted(element)
+    }
+
+    internal fun emitDeleted(element: TSource) {
+        for (i in listeners.indices) listeners[i].deleted(element)
+    }
+
+    internal fun <TInput> follow(input: LiveEnumerable<TInput>, inserted: (TInput) -> Unit, deleted: (TInput) -> Unit) {
+        val listener = object : LiveListener<TInput> {
+            override fun inserted(element: TInput) = inserted(element)
+
+            override fun deleted(element: TInput) = deleted(element)
+        }
+        input.subscribe(listener)
+        subscriptions.add {
+            input.unsubscribe(listener)
+            if (input.derived && input.listeners.isEmpty()) input.close()
+        }
+    }
+
+    /**
+     * Stops maintaining this query; it no longer follows its inputs. The queries it was registered on are closed as
+     * well once no other query or listener depends on them, so closing the last query of a chain releases the whole
+     * chain.
+     */
+    fun close() {
+        subscriptions.forEach { it() }
+        subscriptions.clear()
+    }
+
+    /**
+     * @return An [Enumerable] over the current result, evaluated when iterated.
+     */
+    fun asEnumerable(): Enumerable<TSource> = Enumerable(asSequence())
+
+    /**
+     * Registers a filter over this query.
+     * @param [predicate] A function to test each element for a condition.
+     * @return A live query of the elements that satisfy the condition.
+     */
+    fun where(predicate: (TSource) -> Boolean): LiveEnumerable<TSource> = LiveWhere(this, predicate)
+
+    /**
+     * Registers a projection over this query.
+     * @param [selector] A transform function to apply to each element; it must return equal results for equal
+     * elements.
+     * @return A live query of the projected elements.
+     */
+    fun <TResult> select(selector: (TSource) -> TResult): LiveEnumerable<TResult> = LiveSelect(this, selector)
+
+    /**
+     * Registers an aggregation per key over this query. Because elements can be deleted, the aggregation needs an
+     * inverse: [remove] must undo the effect of [add] for the same element.
+     * @param [keySelector] A function to extract the key for each element.
+     * @param [seed] The initial accumulator value of each key.
+     * @param [add] A function adding an element to an accumulator.
+     * @param [remove] A function removing an element from an accumulator.
+     * @return A live map from each key with at least one element to its aggregate.
+     */
+    fun <TKey, TAccumulate> aggregateBy(
+        keySelector: (TSource) -> TKey,
+        seed: TAccumulate,
+        add: (TAccumulate, TSource) -> TAccumulate,
+        remove: (TAccumulate, TSource) -> TAccumulate
+    ): LiveAggregate<TSource, TKey, TAccumulate> = LiveAggregate(this, keySelector, seed, add, remove)
+
+    /**
+     * Registers a count per key over this query.
+     * @param [keySelector] A function to extract the key for each element.
+     * @return A live map from each key with at least one element to the number of its elements.
+     */
+    fun <TKey> countBy(keySelector: (TSource) -> TKey): LiveAggregate<TSource, TKey, Int> =
+        aggregateBy(keySelector, 0, { count, _ -> count + 1 }, { count, _ -> count - 1 })
+
+    /**
+     * Registers an inner join of this query with another one, maintained with a hash index on each side.
+     * @param [inner] The query to join.
+     * @param [outerKeySelector] A function to extract the join key from each element of this query.
+     * @param [innerKeySelector] A function to extract the join key from each element of [inner].
+     * @param [resultSelector] A function to create a result from two matching elements; it must return equal
+     * results for equal pairs.
+     * @return A live query of the join results.
+     */
+    fun <TInner, TKey, TResult> join(
+        inner: LiveEnumerable<TInner>,
+        outerKeySelector: (TSource) -> TKey,
+        innerKeySelector: (TInner) -> TKey,
+        resultSelector: (TSource, TInner) -> TResult
+    ): LiveEnumerable<TResult> = LiveJoin(this, inner, outerKeySelector, innerKeySelector, resultSelector)
+}
+
+/**
+ * A mutable multiset whose changes drive the [LiveEnumerable] queries registered on it.
+ */
+class LiveCollection<TSource>() : LiveEnumerable<TSource>() {
+    private val elements = Multiset<TSource>()
+
+    /**
+     * The number of elements, counting repeated elements as often as they were added.
+     */
+    val size: Int get() = elements.size
+
+    constructor(elements: Iterable<TSource>) : this() {
+        elements.forEach { add(it) }
+    }
+
+    override val derived: Boolean get() = false
+
+    override fun iterator(): Iterator<TSource> = elements.iterator()
+
+    /**
+     * Inserts an element.
+     * @param [element] The element to insert.
+     * @return This collection.
+     */
+    fun add(element: TSource): LiveCollection<TSource> {
+        elements.add(element)
+        emitInserted(element)
+        return this
+    }
+
+    /**
+     * Deletes one occurrence of an element.
+     * @param [element] The element to delete.
+     * @return `true` if the element was present.
+     */
+    fun remove(element: TSource): Boolean {
+        if (!elements.remove(element)) return false
+        emitDeleted(element)
+        return true
+    }
+
+    /**
+     * Replaces one occurrence of an element with another.
+     * @param [oldElement] The element to replace.
+     * @param [newElement] The replacement.
+     * @return `true` if [oldElement] was present and has been replaced.
+     */
+    fun update(oldElement: TSource, newElement: TSource): Boolean {
+        if (!remove(oldElement)) return false
+        add(newElement)
+        return true
+    }
+}
+
+/**
+ * A derived query that stores its result and updates it from the changes it emits.
+ */
+private abstract class MaterializedView<TSource> : LiveEnumerable<TSource>() {
+    private val results = Multiset<TSource>()
+
+    protected fun insert(element: TSource) {
+        results.add(element)
+        emitInserted(element)
+    }
+
+    protected fun delete(element: TSource) {
+        if (results.remove(element)) emitDeleted(element)
+    }
+
+    override fun iterator(): Iterator<TSource> = results.iterator()
+}
+
+private class LiveWhere<TSource>(
+    input: LiveEnumerable<TSource>,
+    predicate: (TSource) -> Boolean
+) : MaterializedView<TSource>() {
+    init {
+        for (element in input) if (predicate(element)) insert(element)
+        follow(input, { if (predicate(it)) insert(it) }, { if (predicate(it)) delete(it) })
+    }
+}
+
+private class LiveSelect<TSource, TResult>(
+    input: LiveEnumerable<TSource>,
+    selector: (TSource) -> TResult
+) : MaterializedView<TResult>() {
+    init {
+        for (element in input) insert(selector(element))
+        follow(input, { insert(selector(it)) }, { delete(selector(it)) })
+    }
+}
+
+/**
+ * A live aggregation per key, exposed as a query of key-aggregate entries: a change to a group is emitted as the
+ * deletion of its old entry and the insertion of its new one.
+ */
+class LiveAggregate<TSource, TKey, TAccumulate> internal constructor(
+    input: LiveEnumerable<TSource>,
+    private val keySelector: (TSource) -> TKey,
+    private val seed: TAccumulate,
+    private val add: (TAccumulate, TSource) -> TAccumulate,
+    private val remove: (TAccumulate, TSource) -> TAccumulate
+) : LiveEnumerable<Map.Entry<TKey, TAccumulate>>() {
+    private class Group<TAccumulate>(var value: TAccumulate, var count: Int)
+
+    private val groups = LinkedHashMap<TKey, Group<TAccumulate>>()
+
+    init {
+        for (element in input) insert(element)
+        follow(input, ::insert, ::delete)
+    }
+
+    private fun insert(element: TSource) {
+        val key = keySelector(element)
+        val group = groups[key]
+        if (group == null) {
+            val created = Group(add(seed, element), 1)
+            groups[key] = created
+            emitInserted(AbstractMap.SimpleImmutableEntry(key, created.value))
+        } else {
+            val old = group.value
+            group.value = add(old, element)
+            group.count++
+            emitDeleted(AbstractMap.SimpleImmutableEntry(key, old))
+            emitInserted(AbstractMap.SimpleImmutableEntry(key, group.value))
+        }
+    }
+
+    private fun delete(element: TSource) {
+        val key = keySelector(element)
+        val group = groups[key] ?: return
+        val old = group.value
+        emitDeleted(AbstractMap.SimpleImmutableEntry(key, old))
+        if (--group.count == 0) {
+            groups.remove(key)
+        } else {
+            group.value = remove(old, element)
+            emitInserted(AbstractMap.SimpleImmutableEntry(key, group.value))
+        }
+    }
+
+    override fun iterator(): Iterator<Map.Entry<TKey, TAccumulate>> =
+        groups.entries.map { AbstractMap.SimpleImmutableEntry(it.key, it.value.value) }.iterator()
+
+    /**
+     * The number of keys with at least one element.
+     */
+    val size: Int get() = groups.size
+
+    /**
+     * Returns the current aggregate of a key, in constant time.
+     * @param [key] The key.
+     * @return The aggregate, or null if no element has the key.
+     */
+    fun get(key: TKey): TAccumulate? = groups[key]?.value
+
+    /**
+     * @return A snapshot of the aggregates, in order of first appearance of each key.
+     */
+    fun toMap(): Map<TKey, TAccumulate> = groups.entries.associateTo(LinkedHashMap()) { it.key to it.value.value }
+}
+
+private class LiveJoin<TOuter, TInner, TKey, TResult>(
+    outer: LiveEnumerable<TOuter>,
+    inner: LiveEnumerable<TInner>,
+    private val outerKeySelector: (TOuter) -> TKey,
+    private val innerKeySelector: (TInner) -> TKey,
+    private val resultSelector: (TOuter, TInner) -> TResult
+) : MaterializedView<TResult>() {
+    private val outerIndex = HashMap<TKey, MutableList<TOuter>>()
+    private val innerIndex = HashMap<TKey, MutableList<TInner>>()
+
+    init {
+        for (element in outer) outerIndex.getOrPut(outerKeySelector(element)) { ArrayList(2) }.add(element)
+        for (element in inner) innerIndex.getOrPut(innerKeySelector(element)) { ArrayList(2) }.add(element)
+        for ((key, outers) in outerIndex) {
+            val inners = innerIndex[key] ?: continue
+            for (o in outers) for (i in inners) insert(resultSelector(o, i))
+        }
+        follow(outer, { element ->
+            val key = outerKeySelector(element)
+            outerIndex.getOrPut(key) { ArrayList(2) }.add(element)
+            innerIndex[key]?.forEach { insert(resultSelector(element, it)) }
+        }, { element ->
+            val key = outerKeySelector(element)
+            if (outerIndex.removeFrom(key, element)) innerIndex[key]?.forEach { delete(resultSelector(element, it)) }
+        })
+        follow(inner, { element ->
+            val key = innerKeySelector(element)
+            innerIndex.getOrPut(key) { ArrayList(2) }.add(element)
+            outerIndex[key]?.forEach { insert(resultSelector(it, element)) }
+        }, { element ->
+            val key = innerKeySelector(element)
+            if (innerIndex.removeFrom(key, element)) outerIndex[key]?.forEach { delete(resultSelector(it, element)) }
+        })
+    }
+
+    private fun <T> HashMap<TKey, MutableList<T>>.removeFrom(key: TKey, element: T): Boolean {
+        val bucket = this[key] ?: return false
+        if (!bucket.remove(element)) return false
+        if (bucket.isEmpty()) remove(key)
+        return true
+    }
+}
@@ -0,0 +1,185 @@
+package linq
+
+import java.io.BufferedOutputStream
+import java.io.DataOutputStream
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+
+/**
+ * Persists a [LookUp] as an immutable binary snapshot that is served straight from a memory mapping when reopened,
+ * so that neither a rebuild nor a heap copy is needed at startup.
+ *
+ * The file holds one record per key, followed by an open-addressing hash table over the encoded keys.
+ */
+object LookUpSnapshot {
+    private const val MAGIC = 0x4C514C55 // "LQLU"
+    private const val VERSION = 1
+    private const val HEADER_SIZE = 24
+    private const val SLOT_SIZE = 12
+
+    /**
+     * Writes a snapshot of a [LookUp].
+     * @param [lookUp] The lookup to persist.
+     * @param [path] The file to create or overwrite.
+     * @param [keyCodec] The codec for non-null keys.
+     * @param [elementCodec] The codec for non-null elements.
+     * @throws [IOException] The file cannot be written.
+     */
+    @JvmStatic
+    fun <TKey, TElement> write(
+        lookUp: LookUp<TKey, TElement>,
+        path: Path,
+        keyCodec: Codec<TKey>,
+        elementCodec: Codec<TElement>
+    ) {
+        var hashes = IntArray(1024)
+        var offsets = LongArray(1024)
+        var count = 0
+        var position = HEADER_SIZE.toLong()
+        DataOutputStream(BufferedOutputStream(Files.newOutputStream(path), 1 shl 16)).use { out ->
+            out.write(ByteArray(HEADER_SIZE))
+            for (group in lookUp) {
+                val key = group.key?.let { keyCodec.encode(it) }
+                if (count == hashes.size) {
+                    hashes = hashes.copyOf(count * 2)
+                    offsets = offsets.copyOf(count * 2)
+                }
+                hashes[count] = hash(key)
+                offsets[count++] = position
+                out.writeInt(key?.size ?: -1)
+                key?.let { out.write(it) }
+                position += 4 + (key?.size ?: 0)
+                val elements = group.elements.toList()
+                out.writeInt(elements.size)
+                position += 4
+                for (element in elements) {
+                    val bytes = element?.let { elementCodec.encode(it) }
+                    out.writeInt(bytes?.size ?: -1)
+                    bytes?.let { out.write(it) }
+                    position += 4 + (bytes?.size ?: 0)
+                }
+            }
+            val capacity = tableCapacity(count)
+            val slotHashes = IntArray(capacity)
+            val slotOffsets = LongArray(capacity)
+            for (i in 0 until count) {
+                var slot = hashes[i] and (capacity - 1)
+                while (slotOffsets[slot] != 0L) slot = (slot + 1) and (capacity - 1)
+                slotHashes[slot] = hashes[i]
+                slotOffsets[slot] = offsets[i]
+            }
+            for (slot in 0 until capacity) {
+                out.writeInt(slotHashes[slot])
+                out.writeLong(slotOffsets[slot])
+            }
+        }
+        val header = ByteBuffer.allocate(HEADER_SIZE)
+            .putInt(MAGIC).putInt(VERSION).putInt(count).putInt(tableCapacity(count)).putLong(position)
+            .flip()
+        Files.newByteChannel(path, StandardOpenOption.WRITE).use { channel ->
+            while (header.hasRemaining()) channel.write(header)
+        }
+    }
+
+    /**
+     * Opens a snapshot written by [write]. Lookups decode keys and elements on demand from the mapped file.
+     * @param [path] The snapshot file.
+     * @param [keyCodec] The codec the snapshot was written with for keys.
+     * @param [elementCodec] The codec the snapshot was written with for elements.
+     * @return A read-only [LookUp] backed by the file.
+     * @throws [IOException] The file is not a lookup snapshot or cannot be read.
+     */
+    @JvmStatic
+    fun <TKey, TElement> open(path: Path, keyCodec: Codec<TKey>, elementCodec: Codec<TElement>): LookUp<TKey, TElement> {
+        val file = MappedFile(path)
+        if (file.size < HEADER_SIZE) throw IOException("not a lookup snapshot: $path")
+        val header = file.slice(0, HEADER_SIZE)
+        if (header.getInt(0) != MAGIC) throw IOException("not a lookup snapshot: $path")
+        if (header.getInt(4) != VERSION) throw IOException("unsupported lookup snapshot version: ${header.getInt(4)}")
+        return MappedLookUp(file, header.getInt(8), header.getInt(12), header.getLong(16), keyCodec, elementCodec)
+    }
+
+    internal fun hash(key: ByteArray?): Int {
+        if (key == null) return 0
+        // FNV-1a followed by a murmur finalizer to spread the low bits used for probing
+        var h = -0x7ee3623b
+        for (b in key) h = (h xor (b.toInt() and 0xFF)) * 0x01000193
+        h = h xor (h ushr 16)
+        h *= -0x7a143595
+        h = h xor (h ushr 13)
+        return h
+    }
+
+    private fun tableCapacity(count: Int): Int = Integer.highestOneBit(maxOf(count, 1) * 2 - 1) * 2
+
+    private class MappedLookUp<TKey, TElement>(
+        private val file: MappedFile,
+        private val count: Int,
+        private val capacity: Int,
+        private val tableOffset: Long,
+        private val keyCodec: Codec<TKey>,
+        private val elementCodec: Codec<TElement>
+    ) : LookUp<TKey, TElement> {
+        private fun find(key: TKey): Long {
+            val bytes = key?.let { keyCodec.encode(it) }
+            val hash = hash(bytes)
+            var slot = hash and (capacity - 1)
+            while (true) {
+                val entry = tableOffset + slot.toLong() * SLOT_SIZE
+                val offset = file.getLong(entry + 4)
+                if (offset == 0L) return -1
+                if (file.getInt(entry) == hash && keyEquals(offset, bytes)) return offset
+                slot = (slot + 1) and (capacity - 1)
+            }
+        }
+
+        private fun keyEquals(offset: Long, key: ByteArray?): Boolean {
+            val length = file.getInt(offset)
+            if (key == null || length < 0) return key == null && length < 0
+            if (length != key.size) return false
+            return file.slice(offset + 4, length) == ByteBuffer.wrap(key)
+        }
+
+        private fun elements(offset: Long): Enumerable<TElement> = Enumerable(sequence {
+            val keyLength = file.getInt(offset)
+            var position = offset + 4 + maxOf(keyLength, 0)
+            val size = file.getInt(position)
+            position += 4
+            repeat(size) {
+                val length = file.getInt(position)
+                position += 4
+                if (length < 0) {
+                    @Suppress("UNCHECKED_CAST")
+                    yield(null as TElement)
+                } else {
+                    yield(elementCodec.decode(file.slice(position, length)))
+                    position += length
+                }
+            }
+        })
+
+        override fun get(key: TKey): Enumerable<TElement> {
+            val offset = find(key)
+            return if (offset < 0) Enumerable(emptySequence()) else elements(offset)
+        }
+
+        override fun contains(key: TKey): Boolean = find(key) >= 0
+
+        override fun iterator(): Iterator<Group<TKey?, TElement>> = iterator {
+            var offset = HEADER_SIZE.toLong()
+            repeat(count) {
+                val keyLength = file.getInt(offset)
+                val key = if (keyLength < 0) null else keyCodec.decode(file.slice(offset + 4, keyLength))
+                yield(Group(key, elements(offset)))
+                var position = offset + 4 + maxOf(keyLength, 0)
+                val size = file.getInt(position)
+                position += 4
+                repeat(size) { position += 4 + maxOf(file.getInt(position), 0) }
+                offset = position
+            }
+        }
+    }
+}
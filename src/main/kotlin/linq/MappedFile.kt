@@ -0,0 +1,69 @@
+package linq
+
+import java.nio.ByteBuffer
+import java.nio.MappedByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+
+/**
+ * A read-only memory mapping of a whole file. Files larger than a single [MappedByteBuffer] are mapped in segments;
+ * reads that straddle a segment boundary are served from a heap copy.
+ */
+internal class MappedFile(path: Path) {
+    val size: Long
+    private val segments: Array<MappedByteBuffer>
+
+    init {
+        FileChannel.open(path, StandardOpenOption.READ).use { channel ->
+            size = channel.size()
+            val count = ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE).toInt()
+            segments = Array(count) {
+                val start = it * SEGMENT_SIZE
+                channel.map(FileChannel.MapMode.READ_ONLY, start, minOf(SEGMENT_SIZE, size - start))
+            }
+        }
+    }
+
+    /**
+     * Returns a big-endian buffer over `[offset, offset + length)`, positioned at zero.
+     */
+    fun slice(offset: Long, length: Int): ByteBuffer {
+        if (offset < 0 || length < 0 || offset + length > size) {
+            throw IndexOutOfBoundsException("offset: $offset, length: $length, size: $size")
+        }
+        val segment = (offset / SEGMENT_SIZE).toInt()
+        val start = (offset % SEGMENT_SIZE).toInt()
+        if (length == 0 || start + length <= segments[segment].capacity()) {
+            return segments[segment].duplicate().position(start).limit(start + length).slice()
+        }
+        val copy = ByteArray(length)
+        var copied = 0
+        var index = segment
+        var position = start
+        while (copied < length) {
+            val part = minOf(length - copied, segments[index].capacity() - position)
+            segments[index].duplicate().position(position).get(copy, copied, part)
+            copied += part
+            index++
+            position = 0
+        }
+        return ByteBuffer.wrap(copy)
+    }
+
+    fun getInt(offset: Long): Int {
+        val segment = (offset / SEGMENT_SIZE).toInt()
+        val start = (offset % SEGMENT_SIZE).toInt()
+        return if (start + 4 <= segments[segment].capacity()) segments[segment].getInt(start) else slice(offset, 4).getInt(0)
+    }
+
+    fun getLong(offset: Long): Long {
+        val segment = (offset / SEGMENT_SIZE).toInt()
+        val start = (offset % SEGMENT_SIZE).toInt()
+        return if (start + 8 <= segments[segment].capacity()) segments[segment].getLong(start) else slice(offset, 8).getLong(0)
+    }
+
+    private companion object {
+        const val SEGMENT_SIZE = 1L shl 30
+    }
+}
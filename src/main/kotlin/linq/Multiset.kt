@@ -0,0 +1,31 @@
+package linq
+
+/**
+ * A multiset that keeps elements in order of first insertion. Equal elements are counted on the instance added first,
+ * and adding or removing an occurrence takes constant time.
+ */
+internal class Multiset<T> : Iterable<T> {
+    private val counts = LinkedHashMap<T, Int>()
+
+    var size: Int = 0
+        private set
+
+    fun add(element: T) {
+        counts[element] = (counts[element] ?: 0) + 1
+        size++
+    }
+
+    fun contains(element: T): Boolean = counts.containsKey(element)
+
+    fun isEmpty(): Boolean = size == 0
+
+    fun remove(element: T): Boolean {
+        val count = counts[element] ?: return false
+        if (count == 1) counts.remove(element) else counts[element] = count - 1
+        size--
+        return true
+    }
+
+    override fun iterator(): Iterator<T> =
+        counts.entries.asSequence().flatMap { (element, count) -> generateSequence { element }.take(count) }.iterator()
+}
@@ -0,0 +1,114 @@
+package linq
+
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.BlockingQueue
+import java.util.concurrent.Executor
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.TimeUnit
+
+// queue markers; elements that are null travel as NULL
+private val NULL = Any()
+private val END = Any()
+private val NONE = Any()
+
+/**
+ * The state shared between a consumer and its producer. It must not reference the iterator, so that an abandoned
+ * iterator can be collected and its producer stopped by the cleaner.
+ */
+private class PrefetchState : Runnable {
+    @Volatile
+    var closed = false
+
+    override fun run() {
+        closed = true
+    }
+}
+
+private class Producer<T>(
+    private val source: Sequence<T>,
+    private val queue: BlockingQueue<Any>,
+    private val state: PrefetchState
+) : Runnable {
+    override fun run() {
+        try {
+            for (element in source) {
+                if (!put(element ?: NULL)) return
+            }
+            put(END)
+        } catch (e: Throwable) {
+            put(Failure(e))
+        }
+    }
+
+    // waits for room in the queue, giving up once the consumer has gone away
+    private fun put(item: Any): Boolean {
+        while (!state.closed) {
+            if (queue.offer(item, 50, TimeUnit.MILLISECONDS)) return true
+        }
+        return false
+    }
+}
+
+/**
+ * Returns the elements produced on another thread. Closing the iterator, exhausting it, or letting it become
+ * unreachable stops the producer.
+ */
+internal class PrefetchIterator<T>(source: Sequence<T>, bufferSize: Int, executor: Executor) :
+    Iterator<T>, AutoCloseable {
+    private val queue = ArrayBlockingQueue<Any>(bufferSize)
+    private val state = PrefetchState()
+    private val cleanable = Concurrency.cleaner.register(this, state)
+    private var next: Any? = NONE
+
+    init {
+        try {
+            executor.execute(Producer(source, queue, state))
+        } catch (e: RejectedExecutionException) {
+            cleanable.clean()
+            throw e
+        }
+    }
+
+    override fun hasNext(): Boolean {
+        if (next === NONE) next = queue.take()
+        val item = next
+        if (item === END) {
+            close()
+            return false
+        }
+        if (item is Failure) {
+            close()
+            throw item.error
+        }
+        return true
+    }
+
+    /**
+     * Waits at most [nanos] for the producer to decide what [hasNext] returns.
+     * @return `true` if [hasNext] will now return without blocking.
+     */
+    fun await(nanos: Long): Boolean {
+        if (next === NONE) next = queue.poll(nanos, TimeUnit.NANOSECONDS) ?: NONE
+        return next !== NONE
+    }
+
+    override fun next(): T {
+        if (!hasNext()) throw NoSuchElementException()
+        val item = next
+        next = NONE
+        @Suppress("UNCHECKED_CAST")
+        return (if (item === NULL) null else item) as T
+    }
+
+    override fun close() {
+        cleanable.clean()
+        next = END
+        queue.clear()
+    }
+}
+
+fun <TSource> Sequence<TSource>.prefetch(bufferSize: Int, executor: Executor): Sequence<TSource> {
+    require(bufferSize > 0) { "bufferSize must be positive" }
+    val source = this
+    return Sequence { PrefetchIterator(source, bufferSize, executor) }
+}
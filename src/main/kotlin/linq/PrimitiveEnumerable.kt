@@ -0,0 +1,469 @@
+package linq
+
+import java.util.function.DoublePredicate
+import java.util.function.IntPredicate
+import java.util.function.LongPredicate
+
+/**
+ * The reductions over primitive arrays that have a vectorized implementation.
+ */
+internal interface ReductionKernels {
+    fun sum(array: IntArray): Long
+
+    fun sum(array: LongArray): Long
+
+    fun sum(array: DoubleArray): Double
+
+    fun min(array: IntArray): Int
+
+    fun max(array: IntArray): Int
+
+    fun min(array: LongArray): Long
+
+    fun max(array: LongArray): Long
+
+    fun min(array: DoubleArray): Double
+
+    fun max(array: DoubleArray): Double
+
+    /**
+     * Counts the elements between [min] and [max] inclusive; [min] must not be greater than [max].
+     */
+    fun countBetween(array: IntArray, min: Int, max: Int): Int
+}
+
+/**
+ * Scalar reductions. Each loop keeps four independent accumulators with no data-dependent branches, which shortens
+ * the dependency chain of the reduction and avoids branch mispredictions. The JIT does not vectorize the widening int
+ * sum or the ordered double sums, so these loops run one element at a time.
+ */
+internal open class ScalarKernels : ReductionKernels {
+    override fun sum(array: IntArray): Long {
+        var s0 = 0L
+        var s1 = 0L
+        var s2 = 0L
+        var s3 = 0L
+        var i = 0
+        val bound = array.size and 3.inv()
+        while (i < bound) {
+            s0 += array[i]
+            s1 += array[i + 1]
+            s2 += array[i + 2]
+            s3 += array[i + 3]
+            i += 4
+        }
+        while (i < array.size) s0 += array[i++]
+        return s0 + s1 + s2 + s3
+    }
+
+    override fun sum(array: LongArray): Long {
+        var s0 = 0L
+        var s1 = 0L
+        var s2 = 0L
+        var s3 = 0L
+        var i = 0
+        val bound = array.size and 3.inv()
+        while (i < bound) {
+            s0 += array[i]
+            s1 += array[i + 1]
+            s2 += array[i + 2]
+            s3 += array[i + 3]
+            i += 4
+        }
+        while (i < array.size) s0 += array[i++]
+        return s0 + s1 + s2 + s3
+    }
+
+    override fun sum(array: DoubleArray): Double {
+        var s0 = 0.0
+        var s1 = 0.0
+        var s2 = 0.0
+        var s3 = 0.0
+        var i = 0
+        val bound = array.size and 3.inv()
+        while (i < bound) {
+            s0 += array[i]
+            s1 += array[i + 1]
+            s2 += array[i + 2]
+            s3 += array[i + 3]
+            i += 4
+        }
+        while (i < array.size) s0 += array[i++]
+        return (s0 + s1) + (s2 + s3)
+    }
+
+    override fun min(array: IntArray): Int {
+        if (array.isEmpty()) throw NoSuchElementException()
+        var m0 = array[0]
+        var m1 = m0
+        var m2 = m0
+        var m3 = m0
+        var i = 0
+        val bound = array.size and 3.inv()
+        while (i < bound) {
+            m0 = Math.min(m0, array[i])
+            m1 = Math.min(m1, array[i + 1])
+            m2 = Math.min(m2, array[i + 2])
+            m3 = Math.min(m3, array[i + 3])
+            i += 4
+        }
+        while (i < array.size) m0 = Math.min(m0, array[i++])
+        return Math.min(Math.min(m0, m1), Math.min(m2, m3))
+    }
+
+    override fun max(array: IntArray): Int {
+        if (array.isEmpty()) throw NoSuchElementException()
+        var m0 = array[0]
+        var m1 = m0
+        var m2 = m0
+        var m3 = m0
+        var i = 0
+        val bound = array.size and 3.inv()
+        while (i < bound) {
+            m0 = Math.max(m0, array[i])
+            m1 = Math.max(m1, array[i + 1])
+            m2 = Math.max(m2, array[i + 2])
+            m3 = Math.max(m3, array[i + 3])
+            i += 4
+        }
+        while (i < array.size) m0 = Math.max(m0, array[i++])
+        return Math.max(Math.max(m0, m1), Math.max(m2, m3))
+    }
+
+    override fun min(array: LongArray): Long {
+        if (array.isEmpty()) throw NoSuchElementException()
+        var m0 = array[0]
+        var m1 = m0
+        var m2 = m0
+        var m3 = m0
+        var i = 0
+        val bound = array.size and 3.inv()
+        while (i < bound) {
+            m0 = Math.min(m0, array[i])
+            m1 = Math.min(m1, array[i + 1])
+            m2 = Math.min(m2, array[i + 2])
+            m3 = Math.min(m3, array[i + 3])
+            i += 4
+        }
+        while (i < array.size) m0 = Math.min(m0, array[i++])
+        return Math.min(Math.min(m0, m1), Math.min(m2, m3))
+    }
+
+    override fun max(array: LongArray): Long {
+        if (array.isEmpty()) throw NoSuchElementException()
+        var m0 = array[0]
+        var m1 = m0
+        var m2 = m0
+        var m3 = m0
+        var i = 0
+        val bound = array.size and 3.inv()
+        while (i < bound) {
+            m0 = Math.max(m0, array[i])
+            m1 = Math.max(m1, array[i + 1])
+            m2 = Math.max(m2, array[i + 2])
+            m3 = Math.max(m3, array[i + 3])
+            i += 4
+        }
+        while (i < array.size) m0 = Math.max(m0, array[i++])
+        return Math.max(Math.max(m0, m1), Math.max(m2, m3))
+    }
+
+    override fun min(array: DoubleArray): Double {
+        if (array.isEmpty()) throw NoSuchElementException()
+        var m0 = array[0]
+        var m1 = m0
+        var m2 = m0
+        var m3 = m0
+        var i = 0
+        val bound = array.size and 3.inv()
+        while (i < bound) {
+            m0 = Math.min(m0, array[i])
+            m1 = Math.min(m1, array[i + 1])
+            m2 = Math.min(m2, array[i + 2])
+            m3 = Math.min(m3, array[i + 3])
+            i += 4
+        }
+        while (i < array.size) m0 = Math.min(m0, array[i++])
+        return Math.min(Math.min(m0, m1), Math.min(m2, m3))
+    }
+
+    override fun max(array: DoubleArray): Double {
+        if (array.isEmpty()) throw NoSuchElementException()
+        var m0 = array[0]
+        var m1 = m0
+        var m2 = m0
+        var m3 = m0
+        var i = 0
+        val bound = array.size and 3.inv()
+        while (i < bound) {
+            m0 = Math.max(m0, array[i])
+            m1 = Math.max(m1, array[i + 1])
+            m2 = Math.max(m2, array[i + 2])
+            m3 = Math.max(m3, array[i + 3])
+            i += 4
+        }
+        while (i < array.size) m0 = Math.max(m0, array[i++])
+        return Math.max(Math.max(m0, m1), Math.max(m2, m3))
+    }
+
+    // branch-free: the range test is turned into the sign bit of a difference, which is added to the count
+    override fun countBetween(array: IntArray, min: Int, max: Int): Int {
+        val range = (max - min).toLong() and 0xFFFFFFFFL
+        var count = 0
+        for (value in array) {
+            val offset = (value - min).toLong() and 0xFFFFFFFFL
+            count += 1 - ((range - offset) ushr 63).toInt()
+        }
+        return count
+    }
+}
+
+/**
+ * Kernels over primitive arrays. The reductions use the Vector API where the `jdk.incubator.vector` module has been
+ * added to the runtime, and the scalar loops of [ScalarKernels] otherwise.
+ */
+internal object ArrayKernels : ReductionKernels by loadReductionKernels() {
+    fun filter(array: IntArray, predicate: IntPredicate): IntArray {
+        val result = IntArray(array.size)
+        var size = 0
+        for (value in array) {
+            if (predicate.test(value)) result[size++] = value
+        }
+        return result.copyOf(size)
+    }
+
+    fun filter(array: LongArray, predicate: LongPredicate): LongArray {
+        val result = LongArray(array.size)
+        var size = 0
+        for (value in array) {
+            if (predicate.test(value)) result[size++] = value
+        }
+        return result.copyOf(size)
+    }
+
+    fun filter(array: DoubleArray, predicate: DoublePredicate): DoubleArray {
+        val result = DoubleArray(array.size)
+        var size = 0
+        for (value in array) {
+            if (predicate.test(value)) result[size++] = value
+        }
+        return result.copyOf(size)
+    }
+}
+
+/**
+ * Loads the vectorized reductions, which are compiled separately against the incubator module, and falls back to the
+ * scalar loops when the module is not resolved or the vectorized class cannot be linked.
+ */
+private fun loadReductionKernels(): ReductionKernels {
+    if (!ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent) return ScalarKernels()
+    return try {
+        Class.forName("linq.VectorKernels").getDeclaredConstructor().newInstance() as ReductionKernels
+    } catch (e: ReflectiveOperationException) {
+        ScalarKernels()
+    } catch (e: LinkageError) {
+        ScalarKernels()
+    }
+}
+
+/**
+ * An [Int] sequence backed by a primitive array, whose aggregates run over the array without boxing.
+ */
+class IntEnumerable internal constructor(private val array: IntArray) : Iterable<Int> {
+    override fun iterator(): IntIterator = array.iterator()
+
+    /**
+     * @return The number of elements.
+     */
+    fun count(): Int = array.size
+
+    /**
+     * Returns the number of elements that satisfy a condition.
+     * @param [predicate] A function to test each element for a condition.
+     * @return The number of matching elements.
+     */
+    fun count(predicate: IntPredicate): Int {
+        var count = 0
+        for (value in array) {
+            if (predicate.test(value)) count++
+        }
+        return count
+    }
+
+    /**
+     * Returns the number of elements between [min] and [max] inclusive.
+     * @param [min] The lower bound.
+     * @param [max] The upper bound.
+     * @return The number of elements in range, or 0 if [min] is greater than [max].
+     */
+    fun countBetween(min: Int, max: Int): Int = if (min > max) 0 else ArrayKernels.countBetween(array, min, max)
+
+    /**
+     * @return The sum of the elements, computed in [Long] so that it cannot overflow.
+     */
+    fun sum(): Long = ArrayKernels.sum(array)
+
+    /**
+     * @return The smallest element.
+     * @throws [NoSuchElementException] The sequence is empty.
+     */
+    fun min(): Int = ArrayKernels.min(array)
+
+    /**
+     * @return The largest element.
+     * @throws [NoSuchElementException] The sequence is empty.
+     */
+    fun max(): Int = ArrayKernels.max(array)
+
+    /**
+     * @return The average of the elements, or [Double.NaN] if the sequence is empty.
+     */
+    fun average(): Double = if (array.isEmpty()) Double.NaN else ArrayKernels.sum(array).toDouble() / array.size
+
+    /**
+     * Filters the elements into a new primitive array.
+     * @param [predicate] A function to test each element for a condition.
+     * @return An [IntEnumerable] that contains the elements that satisfy the condition.
+     */
+    fun where(predicate: IntPredicate): IntEnumerable = IntEnumerable(ArrayKernels.filter(array, predicate))
+
+    /**
+     * @return An [Enumerable] over the boxed elements.
+     */
+    fun asEnumerable(): Enumerable<Int> = Enumerable(array.asSequence())
+
+    /**
+     * @return A copy of the elements.
+     */
+    fun toArray(): IntArray = array.copyOf()
+}
+
+/**
+ * A [Long] sequence backed by a primitive array, whose aggregates run over the array without boxing.
+ */
+class LongEnumerable internal constructor(private val array: LongArray) : Iterable<Long> {
+    override fun iterator(): LongIterator = array.iterator()
+
+    /**
+     * @return The number of elements.
+     */
+    fun count(): Int = array.size
+
+    /**
+     * Returns the number of elements that satisfy a condition.
+     * @param [predicate] A function to test each element for a condition.
+     * @return The number of matching elements.
+     */
+    fun count(predicate: LongPredicate): Int {
+        var count = 0
+        for (value in array) {
+            if (predicate.test(value)) count++
+        }
+        return count
+    }
+
+    /**
+     * @return The sum of the elements.
+     */
+    fun sum(): Long = ArrayKernels.sum(array)
+
+    /**
+     * @return The smallest element.
+     * @throws [NoSuchElementException] The sequence is empty.
+     */
+    fun min(): Long = ArrayKernels.min(array)
+
+    /**
+     * @return The largest element.
+     * @throws [NoSuchElementException] The sequence is empty.
+     */
+    fun max(): Long = ArrayKernels.max(array)
+
+    /**
+     * @return The average of the elements, or [Double.NaN] if the sequence is empty.
+     */
+    fun average(): Double = if (array.isEmpty()) Double.NaN else ArrayKernels.sum(array).toDouble() / array.size
+
+    /**
+     * Filters the elements into a new primitive array.
+     * @param [predicate] A function to test each element for a condition.
+     * @return A [LongEnumerable] that contains the elements that satisfy the condition.
+     */
+    fun where(predicate: LongPredicate): LongEnumerable =
+        LongEnumerable(ArrayKernels.filter(array, predicate))
+
+    /**
+     * @return An [Enumerable] over the boxed elements.
+     */
+    fun asEnumerable(): Enumerable<Long> = Enumerable(array.asSequence())
+
+    /**
+     * @return A copy of the elements.
+     */
+    fun toArray(): LongArray = array.copyOf()
+}
+
+/**
+ * A [Double] sequence backed by a primitive array, whose aggregates run over the array without boxing.
+ */
+class DoubleEnumerable internal constructor(private val array: DoubleArray) : Iterable<Double> {
+    override fun iterator(): DoubleIterator = array.iterator()
+
+    /**
+     * @return The number of elements.
+     */
+    fun count(): Int = array.size
+
+    /**
+     * Returns the number of elements that satisfy a condition.
+     * @param [predicate] A function to test each element for a condition.
+     * @return The number of matching elements.
+     */
+    fun count(predicate: DoublePredicate): Int {
+        var count = 0
+        for (value in array) {
+            if (predicate.test(value)) count++
+        }
+        return count
+    }
+
+    /**
+     * @return The sum of the elements.
+     */
+    fun sum(): Double = ArrayKernels.sum(array)
+
+    /**
+     * @return The smallest element, or [Double.NaN] if any element is NaN.
+     * @throws [NoSuchElementException] The sequence is empty.
+     */
+    fun min(): Double = ArrayKernels.min(array)
+
+    /**
+     * @return The largest element, or [Double.NaN] if any element is NaN.
+     * @throws [NoSuchElementException] The sequence is empty.
+     */
+    fun max(): Double = ArrayKernels.max(array)
+
+    /**
+     * @return The average of the elements, or [Double.NaN] if the sequence is empty.
+     */
+    fun average(): Double = if (array.isEmpty()) Double.NaN else ArrayKernels.sum(array) / array.size
+
+    /**
+     * Filters the elements into a new primitive array.
+     * @param [predicate] A function to test each element for a condition.
+     * @return A [DoubleEnumerable] that contains the elements that satisfy the condition.
+     */
+    fun where(predicate: DoublePredicate): DoubleEnumerable =
+        DoubleEnumerable(ArrayKernels.filter(array, predicate))
+
+    /**
+     * @return An [Enumerable] over the boxed elements.
+     */
+    fun asEnumerable(): Enumerable<Double> = Enumerable(array.asSequence())
+
+    /**
+     * @return A copy of the elements.
+     */
+    fun toArray(): DoubleArray = array.copyOf()
+}
@@ -0,0 +1,143 @@
+package linq
+
+/**
+ * A bounded cache of materialized query results, keyed by a query id and the version of the source the query ran
+ * on. Results of an older version are never returned for a newer one; they simply age out.
+ *
+ * The weight of a result is one plus its number of elements (for a [LookUp], plus its groups as well), so that even
+ * empty results count toward the budget. When the total weight exceeds [maxWeight], the least recently used results
+ * are evicted; a result heavier than [maxWeight] on its own is returned without being cached. All operations are
+ * thread-safe, but concurrent misses on the same key may each run the query.
+ * @param [maxWeight] The maximum total weight of the cached results.
+ */
+class QueryCache(val maxWeight: Long) {
+    // lookUp separates the results of getOrPutLookUp from those of getOrPut under the same id
+    private data class Key(val queryId: Any?, val version: Any?, val lookUp: Boolean)
+
+    private class Entry(val value: Any, val weight: Long)
+
+    private val entries = LinkedHashMap<Key, Entry>(16, 0.75f, true)
+
+    init {
+        require(maxWeight > 0) { "maxWeight must be positive" }
+    }
+
+    /**
+     * The total weight of the cached results.
+     */
+    var weight: Long = 0
+        @Synchronized get
+        private set
+
+    /**
+     * The number of lookups answered from the cache.
+     */
+    var hitCount: Long = 0
+        @Synchronized get
+        private set
+
+    /**
+     * The number of lookups that had to run their query.
+     */
+    var missCount: Long = 0
+        @Synchronized get
+        private set
+
+    /**
+     * The number of results evicted to stay within [maxWeight].
+     */
+    var evictionCount: Long = 0
+        @Synchronized get
+        private set
+
+    /**
+     * The number of cached results.
+     */
+    val size: Int
+        @Synchronized get() = entries.size
+
+    /**
+     * The fraction of lookups answered from the cache, or 0 if there was no lookup.
+     */
+    val hitRate: Double
+        @Synchronized get() = if (hitCount + missCount == 0L) 0.0 else hitCount.toDouble() / (hitCount + missCount)
+
+    /**
+     * Returns the cached result of a query, running and materializing it on a miss.
+     * @param [queryId] The identity of the query definition.
+     * @param [version] The version of the source the query runs on.
+     * @param [query] A function producing the result.
+     * @return An [Enumerable] over the materialized result.
+     */
+    fun <TSource> getOrPut(queryId: Any?, version: Any?, query: () -> Enumerable<TSource>): Enumerable<TSource> {
+        val key = Key(queryId, version, false)
+        @Suppress("UNCHECKED_CAST")
+        val list = lookup(key) as List<TSource>? ?: query().toList().also { put(key, it, it.size.toLong() + 1) }
+        return Enumerable(list.asSequence())
+    }
+
+    /**
+     * Returns the cached [LookUp] of a query, running it on a miss.
+     * @param [queryId] The identity of the query definition.
+     * @param [version] The version of the source the query runs on.
+     * @param [query] A function producing the [LookUp].
+     * @return The [LookUp].
+     */
+    fun <TKey, TElement> getOrPutLookUp(
+        queryId: Any?,
+        version: Any?,
+        query: () -> LookUp<TKey, TElement>
+    ): LookUp<TKey, TElement> {
+        val key = Key(queryId, version, true)
+        @Suppress("UNCHECKED_CAST")
+        return lookup(key) as LookUp<TKey, TElement>? ?: query().also { lookUp ->
+            put(key, lookUp, lookUp.sumOf { it.elements.count().toLong() + 1 } + 1)
+        }
+    }
+
+    /**
+     * Removes the cached results of a query, for every version.
+     * @param [queryId] The identity of the query definition.
+     */
+    @Synchronized
+    fun invalidate(queryId: Any?) {
+        val iterator = entries.entries.iterator()
+        while (iterator.hasNext()) {
+            val entry = iterator.next()
+            if (entry.key.queryId == queryId) {
+                weight -= entry.value.weight
+                iterator.remove()
+            }
+        }
+    }
+
+    /**
+     * Removes all cached results. The hit, miss and eviction counts are kept.
+     */
+    @Synchronized
+    fun clear() {
+        entries.clear()
+        weight = 0
+    }
+
+    @Synchronized
+    private fun lookup(key: Key): Any? {
+        val entry = entries[key]
+        if (entry == null) missCount++ else hitCount++
+        return entry?.value
+    }
+
+    @Synchronized
+    private fun put(key: Key, value: Any, weight: Long) {
+        if (weight > maxWeight) return
+        entries.put(key, Entry(value, weight))?.let { this.weight -= it.weight }
+        this.weight += weight
+        val iterator = entries.values.iterator()
+        while (this.weight > maxWeight) {
+            val eldest = iterator.next()
+            this.weight -= eldest.weight
+            iterator.remove()
+            evictionCount++
+        }
+    }
+}
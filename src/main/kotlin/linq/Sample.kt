@@ -0,0 +1,191 @@
+package linq
+
+import java.util.PriorityQueue
+import java.util.Random
+
+/**
+ * A uniform reservoir sample of at most [capacity] items, maintained in a single pass with Algorithm L,
+ * which draws the number of items to skip instead of a random number per item.
+ *
+ * Reservoirs over separate partitions can be merged into a uniform sample of the combined input.
+ */
+class Reservoir<T>(val capacity: Int, private val random: Random) {
+    private val items = ArrayList<T>()
+    private var weight = 0.0
+    private var nextIndex = 0L
+
+    /**
+     * The number of items offered to the reservoir.
+     */
+    var seen: Long = 0
+        private set
+
+    constructor(capacity: Int) : this(capacity, Random())
+
+    init {
+        require(capacity >= 0) { "capacity must not be negative" }
+    }
+
+    /**
+     * Offers an item to the reservoir.
+     * @param [item] The item.
+     * @return This reservoir.
+     */
+    fun add(item: T): Reservoir<T> {
+        val index = seen++
+        if (items.size < capacity) {
+            items.add(item)
+            if (items.size == capacity) {
+                weight = Math.exp(Math.log(nextDouble()) / capacity)
+                skip(index)
+            }
+        } else if (capacity > 0 && index == nextIndex) {
+            items[random.nextInt(capacity)] = item
+            weight *= Math.exp(Math.log(nextDouble()) / capacity)
+            skip(index)
+        }
+        return this
+    }
+
+    private fun skip(index: Long) {
+        val gap = Math.floor(Math.log(nextDouble()) / Math.log1p(-weight))
+        nextIndex = if (gap >= Long.MAX_VALUE - index) Long.MAX_VALUE else index + 1 + gap.toLong()
+    }
+
+    // a uniform double in (0, 1), so that its logarithm is finite
+    private fun nextDouble(): Double {
+        var value: Double
+        do value = random.nextDouble() while (value == 0.0)
+        return value
+    }
+
+    /**
+     * Merges another reservoir into this one, so that it holds a uniform sample of both inputs.
+     * @param [other] The reservoir to merge; it is not modified.
+     * @return This reservoir.
+     */
+    fun merge(other: Reservoir<T>): Reservoir<T> {
+        val left = ArrayList(items).also { it.shuffle(random) }
+        val right = ArrayList(other.items).also { it.shuffle(random) }
+        var leftRemaining = seen
+        var rightRemaining = other.seen
+        items.clear()
+        // draw without replacement, picking each side in proportion to the population it stands for
+        while (items.size < capacity && (left.isNotEmpty() || right.isNotEmpty())) {
+            val fromLeft = right.isEmpty() ||
+                    left.isNotEmpty() && random.nextDouble() * (leftRemaining + rightRemaining) < leftRemaining
+            if (fromLeft) {
+                items.add(left.removeAt(left.size - 1))
+                leftRemaining--
+            } else {
+                items.add(right.removeAt(right.size - 1))
+                rightRemaining--
+            }
+        }
+        seen += other.seen
+        if (items.size == capacity && capacity > 0) {
+            // Algorithm L's threshold is the capacity-th smallest of seen uniform keys, which is
+            // Beta(capacity, seen - capacity + 1) distributed and independent of which items were kept
+            val x = nextGamma(capacity.toDouble())
+            val y = nextGamma((seen - capacity + 1).toDouble())
+            weight = x / (x + y)
+            skip(seen - 1)
+        }
+        return this
+    }
+
+    // Marsaglia and Tsang's method, for shape >= 1
+    private fun nextGamma(shape: Double): Double {
+        val d = shape - 1.0 / 3
+        val c = 1 / Math.sqrt(9 * d)
+        while (true) {
+            val x = random.nextGaussian()
+            val t = 1 + c * x
+            if (t <= 0) continue
+            val v = t * t * t
+            if (Math.log(nextDouble()) < x * x / 2 + d - d * v + d * Math.log(v)) return d * v
+        }
+    }
+
+    /**
+     * Returns the sampled items.
+     * @return A copy of the current sample.
+     */
+    fun toList(): List<T> = ArrayList(items)
+}
+
+fun <TSource> Sequence<TSource>.sample(count: Int, random: Random): Sequence<TSource> = sample(count) { random }
+
+// newRandom is called once per iteration, so that a seeded generator restarts with every iteration
+internal fun <TSource> Sequence<TSource>.sample(count: Int, newRandom: () -> Random): Sequence<TSource> {
+    require(count >= 0) { "count must not be negative" }
+    return sequence {
+        val reservoir = Reservoir<TSource>(count, newRandom())
+        for (element in this@sample) {
+            reservoir.add(element)
+        }
+        yieldAll(reservoir.toList())
+    }
+}
+
+fun <TSource> Sequence<TSource>.sampleFraction(probability: Double, random: Random): Sequence<TSource> =
+    sampleFraction(probability) { random }
+
+internal fun <TSource> Sequence<TSource>.sampleFraction(probability: Double, newRandom: () -> Random): Sequence<TSource> {
+    require(probability in 0.0..1.0) { "probability must be between 0 and 1" }
+    if (probability == 0.0) return emptySequence()
+    if (probability == 1.0) return this
+    return sequence {
+        val random = newRandom()
+        val log = Math.log1p(-probability)
+        // the gaps between Bernoulli successes are geometric, so draw them instead of testing every element
+        fun gap(): Long {
+            var u: Double
+            do u = random.nextDouble() while (u == 0.0)
+            return Math.floor(Math.log(u) / log).toLong()
+        }
+
+        var skip = gap()
+        for (element in this@sampleFraction) {
+            if (skip-- == 0L) {
+                yield(element)
+                skip = gap()
+            }
+        }
+    }
+}
+
+fun <TSource> Sequence<TSource>.sampleWeighted(
+    count: Int,
+    weightSelector: (TSource) -> Double,
+    random: Random
+): Sequence<TSource> = sampleWeighted(count, weightSelector) { random }
+
+internal fun <TSource> Sequence<TSource>.sampleWeighted(
+    count: Int,
+    weightSelector: (TSource) -> Double,
+    newRandom: () -> Random
+): Sequence<TSource> {
+    require(count >= 0) { "count must not be negative" }
+    return sequence {
+        if (count == 0) return@sequence
+        val random = newRandom()
+        // Efraimidis-Spirakis: keep the items with the largest keys u^(1 / w), compared in log space
+        val heap = PriorityQueue<Tuple<Double, TSource>>(count, compareBy { it.first })
+        for (element in this@sampleWeighted) {
+            val weight = weightSelector(element)
+            require(weight >= 0 && !weight.isInfinite()) { "weight must be finite and not negative" }
+            if (weight == 0.0) continue
+            var u: Double
+            do u = random.nextDouble() while (u == 0.0)
+            val key = Math.log(u) / weight
+            if (heap.size < count) {
+                heap.add(Tuple(key, element))
+            } else if (key > heap.peek().first) {
+                heap.poll()
+                heap.add(Tuple(key, element))
+            }
+        }
+        yieldAll(heap.map { it.second })
+    }
+}
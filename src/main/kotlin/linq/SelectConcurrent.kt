@@ -0,0 +1,52 @@
+package linq
+
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
+import java.util.concurrent.Executor
+import java.util.concurrent.LinkedBlockingQueue
+
+private fun <T> CompletableFuture<T>.await(): T = try {
+    join()
+} catch (e: CompletionException) {
+    throw e.cause ?: e
+}
+
+fun <TSource, TResult> Sequence<TSource>.selectConcurrent(
+    maxConcurrency: Int,
+    ordered: Boolean,
+    executor: Executor,
+    selector: (TSource) -> TResult
+): Sequence<TResult> {
+    require(maxConcurrency > 0) { "maxConcurrency must be positive" }
+    return sequence {
+        val iterator = this@selectConcurrent.iterator()
+        if (ordered) {
+            // a sliding window of pending results, awaited in source order
+            val pending = ArrayDeque<CompletableFuture<TResult>>(maxConcurrency)
+            while (true) {
+                while (pending.size < maxConcurrency && iterator.hasNext()) {
+                    val element = iterator.next()
+                    pending.addLast(CompletableFuture.supplyAsync({ selector(element) }, executor))
+                }
+                if (pending.isEmpty()) break
+                yield(pending.removeFirst().await())
+            }
+        } else {
+            // results are handed over in completion order
+            val completed = LinkedBlockingQueue<CompletableFuture<TResult>>()
+            var inFlight = 0
+            while (true) {
+                while (inFlight < maxConcurrency && iterator.hasNext()) {
+                    val element = iterator.next()
+                    val future = CompletableFuture.supplyAsync({ selector(element) }, executor)
+                    future.whenComplete { _, _ -> completed.add(future) }
+                    inFlight++
+                }
+                if (inFlight == 0) break
+                val future = completed.take()
+                inFlight--
+                yield(future.await())
+            }
+        }
+    }
+}
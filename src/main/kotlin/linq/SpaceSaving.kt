@@ -0,0 +1,191 @@
+package linq
+
+import java.io.Serializable
+import java.util.AbstractMap
+
+/**
+ * A Space-Saving summary tracking the most frequent items of a stream with a fixed number of counters.
+ *
+ * Every item whose true frequency exceeds `total / capacity` is guaranteed to be tracked, and each reported count
+ * overestimates the true count by at most the item's [error], itself at most `total / capacity`.
+ * Summaries can be merged, so summaries built over separate partitions combine into a summary of the whole input.
+ */
+class SpaceSaving<T>(val capacity: Int) : Serializable {
+    // a binary min-heap on counts, with the position of every tracked item
+    private val items: Array<Any?>
+    private val counts: LongArray
+    private val errors: LongArray
+    private val positions = HashMap<T, Int>()
+    private var size = 0
+
+    /**
+     * The total weight of the items added to the summary.
+     */
+    var total: Long = 0
+        private set
+
+    init {
+        require(capacity > 0) { "capacity must be positive" }
+        items = arrayOfNulls(capacity)
+        counts = LongArray(capacity)
+        errors = LongArray(capacity)
+    }
+
+    /**
+     * Adds one occurrence of an item.
+     * @param [item] The item to count.
+     * @return This summary.
+     */
+    fun add(item: T): SpaceSaving<T> = add(item, 1)
+
+    /**
+     * Adds occurrences of an item.
+     * @param [item] The item to count.
+     * @param [weight] The number of occurrences.
+     * @return This summary.
+     * @throws [IllegalArgumentException] [weight] is below 1.
+     */
+    fun add(item: T, weight: Long): SpaceSaving<T> {
+        require(weight > 0) { "weight must be positive" }
+        total += weight
+        val position = positions[item]
+        if (position != null) {
+            counts[position] += weight
+            siftDown(position)
+        } else if (size < capacity) {
+            set(size, item, weight, 0)
+            siftUp(size++)
+        } else {
+            // replace the least frequent item; its count becomes the newcomer's possible overestimate
+            @Suppress("UNCHECKED_CAST")
+            positions.remove(items[0] as T)
+            val floor = counts[0]
+            set(0, item, floor + weight, floor)
+            siftDown(0)
+        }
+        return this
+    }
+
+    /**
+     * Merges another summary into this one.
+     * @param [other] The summary to merge; it is not modified.
+     * @return This summary.
+     */
+    fun merge(other: SpaceSaving<T>): SpaceSaving<T> {
+        val ownFloor = if (size == capacity) counts[0] else 0
+        val otherFloor = if (other.size == other.capacity) other.counts[0] else 0
+        val merged = HashMap<T, LongArray>(size + other.size)
+        for (i in 0 until size) {
+            @Suppress("UNCHECKED_CAST")
+            val item = items[i] as T
+            val j = other.positions[item]
+            merged[item] = if (j == null) longArrayOf(counts[i] + otherFloor, errors[i] + otherFloor)
+            else longArrayOf(counts[i] + other.counts[j], errors[i] + other.errors[j])
+        }
+        for (j in 0 until other.size) {
+            @Suppress("UNCHECKED_CAST")
+            val item = other.items[j] as T
+            if (!merged.containsKey(item)) merged[item] = longArrayOf(other.counts[j] + ownFloor, other.errors[j] + ownFloor)
+        }
+        positions.clear()
+        size = 0
+        for ((item, value) in merged.entries.sortedByDescending { it.value[0] }.take(capacity)) {
+            set(size, item, value[0], value[1])
+            siftUp(size++)
+        }
+        total += other.total
+        return this
+    }
+
+    /**
+     * Returns the estimated count of an item.
+     * @param [item] The item to look up.
+     * @return The estimated count, or 0 if the item is not tracked.
+     */
+    fun estimate(item: T): Long = positions[item]?.let { counts[it] } ?: 0
+
+    /**
+     * Returns the maximum overestimate of an item's count.
+     * @param [item] The item to look up.
+     * @return The maximum overestimate, or 0 if the item is not tracked.
+     */
+    fun error(item: T): Long = positions[item]?.let { errors[it] } ?: 0
+
+    /**
+     * Returns the most frequent tracked items.
+     * @param [n] The maximum number of items to return.
+     * @return The items with their estimated counts, most frequent first.
+     */
+    fun top(n: Int): List<Map.Entry<T, Long>> = (0 until size)
+        .sortedByDescending { counts[it] }
+        .take(n)
+        .map {
+            @Suppress("UNCHECKED_CAST")
+            AbstractMap.SimpleImmutableEntry(items[it] as T, counts[it])
+        }
+
+    private fun set(position: Int, item: T, count: Long, error: Long) {
+        items[position] = item
+        counts[position] = count
+        errors[position] = error
+        positions[item] = position
+    }
+
+    private fun swap(i: Int, j: Int) {
+        val item = items[i]
+        items[i] = items[j]
+        items[j] = item
+        val count = counts[i]
+        counts[i] = counts[j]
+        counts[j] = count
+        val error = errors[i]
+        errors[i] = errors[j]
+        errors[j] = error
+        @Suppress("UNCHECKED_CAST")
+        positions[items[i] as T] = i
+        @Suppress("UNCHECKED_CAST")
+        positions[items[j] as T] = j
+    }
+
+    private fun siftUp(position: Int) {
+        var child = position
+        while (child > 0) {
+            val parent = (child - 1) / 2
+            if (counts[parent] <= counts[child]) return
+            swap(parent, child)
+            child = parent
+        }
+    }
+
+    private fun siftDown(position: Int) {
+        var parent = position
+        while (true) {
+            val left = parent * 2 + 1
+            if (left >= size) return
+            val child = if (left + 1 < size && counts[left + 1] < counts[left]) left + 1 else left
+            if (counts[parent] <= counts[child]) return
+            swap(parent, child)
+            parent = child
+        }
+    }
+
+    companion object {
+        private const val serialVersionUID = 1L
+    }
+}
+
+fun <TSource, TKey> Sequence<TSource>.topFrequent(
+    keySelector: (TSource) -> TKey,
+    n: Int,
+    errorBound: Double
+): Sequence<Map.Entry<TKey, Long>> {
+    require(n > 0) { "n must be positive" }
+    require(errorBound > 0 && errorBound < 1) { "errorBound must be between 0 and 1 exclusive" }
+    return sequence {
+        val summary = SpaceSaving<TKey>(maxOf(n, Math.ceil(1 / errorBound).toInt()))
+        for (element in this@topFrequent) {
+            summary.add(keySelector(element))
+        }
+        yieldAll(summary.top(n))
+    }
+}
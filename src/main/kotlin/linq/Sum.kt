@@ -1,9 +1,92 @@
 package linq
 
+// floats are accumulated in a double, whose 29 extra bits of precision absorb the rounding of each addition
 fun <TSource> Sequence<TSource>.sum(selector: (TSource) -> Float): Float {
-    var sum: Float = 0.toFloat()
+    var sum = 0.0
     for (element in this) {
         sum += selector(element)
     }
-    return sum
+    return sum.toFloat()
+}
+
+/**
+ * A running sum of [Double] values with Kahan-Babuska (Neumaier) compensation: the low-order bits lost by each
+ * addition are collected separately and added back at the end, so the error stays within a few units in the last
+ * place regardless of the number of values. Adding is allocation-free.
+ *
+ * Sums built over separate partitions can be merged; merging the same partitions in the same order always gives the
+ * same result.
+ */
+class CompensatedSum {
+    private var sum = 0.0
+    private var compensation = 0.0
+
+    // the uncompensated sum, which is exact for infinities where compensation would produce NaN
+    private var simpleSum = 0.0
+
+    /**
+     * The number of values added.
+     */
+    var count: Long = 0
+        private set
+
+    /**
+     * Adds a value.
+     * @param [value] The value to add.
+     * @return This sum.
+     */
+    fun add(value: Double): CompensatedSum {
+        addCompensated(value)
+        simpleSum += value
+        count++
+        return this
+    }
+
+    private fun addCompensated(value: Double) {
+        val t = sum + value
+        compensation += if (Math.abs(sum) >= Math.abs(value)) (sum - t) + value else (value - t) + sum
+        sum = t
+    }
+
+    /**
+     * Merges another sum into this one.
+     * @param [other] The sum to merge; it is not modified.
+     * @return This sum.
+     */
+    fun merge(other: CompensatedSum): CompensatedSum {
+        addCompensated(other.sum)
+        addCompensated(other.compensation)
+        simpleSum += other.simpleSum
+        count += other.count
+        return this
+    }
+
+    /**
+     * @return The compensated sum of the values added.
+     */
+    fun sum(): Double {
+        val result = sum + compensation
+        return if (result.isNaN() && simpleSum.isInfinite()) simpleSum else result
+    }
+
+    /**
+     * @return The average of the values added, or [Double.NaN] if none were added.
+     */
+    fun average(): Double = if (count == 0L) Double.NaN else sum() / count
+}
+
+fun <TSource> Sequence<TSource>.sumCompensated(selector: (TSource) -> Double): Double {
+    val sum = CompensatedSum()
+    for (element in this) {
+        sum.add(selector(element))
+    }
+    return sum.sum()
+}
+
+fun <TSource> Sequence<TSource>.averageCompensated(selector: (TSource) -> Double): Double {
+    val sum = CompensatedSum()
+    for (element in this) {
+        sum.add(selector(element))
+    }
+    return sum.average()
 }
@@ -0,0 +1,289 @@
+package linq
+
+import java.io.Serializable
+import java.nio.ByteBuffer
+import java.util.AbstractMap
+
+/**
+ * A merging t-digest estimating quantiles of a stream of [Double] values in bounded memory.
+ *
+ * Values are buffered and periodically folded into at most about `compression * π / 2` centroids, which are kept
+ * small near the tails so that extreme quantiles such as p99 stay accurate. Digests can be merged, so digests built
+ * over separate partitions combine into the digest of the whole input.
+ */
+class TDigest(val compression: Double) : Serializable {
+    private var means = DoubleArray(0)
+    private var weights = DoubleArray(0)
+    private var centroids = 0
+    private val bufferMeans: DoubleArray
+    private val bufferWeights: DoubleArray
+    private var buffered = 0
+
+    /**
+     * The total weight of the values added to the digest.
+     */
+    var count: Long = 0
+        private set
+
+    /**
+     * The smallest value added, or [Double.NaN] if the digest is empty.
+     */
+    var min: Double = Double.NaN
+        private set
+
+    /**
+     * The largest value added, or [Double.NaN] if the digest is empty.
+     */
+    var max: Double = Double.NaN
+        private set
+
+    constructor() : this(100.0)
+
+    init {
+        require(compression >= 10) { "compression must be at least 10" }
+        val size = (compression * 5).toInt()
+        bufferMeans = DoubleArray(size)
+        bufferWeights = DoubleArray(size)
+    }
+
+    /**
+     * Adds a value to the digest.
+     * @param [value] The value to add.
+     * @return This digest.
+     * @throws [IllegalArgumentException] [value] is NaN.
+     */
+    fun add(value: Double): TDigest = add(value, 1)
+
+    /**
+     * Adds a value with an integral weight to the digest.
+     * @param [value] The value to add.
+     * @param [weight] The number of occurrences of [value].
+     * @return This digest.
+     * @throws [IllegalArgumentException] [value] is NaN or [weight] is below 1.
+     */
+    fun add(value: Double, weight: Long): TDigest {
+        require(!value.isNaN()) { "cannot add NaN" }
+        require(weight > 0) { "weight must be positive" }
+        if (buffered == bufferMeans.size) compress()
+        bufferMeans[buffered] = value
+        bufferWeights[buffered++] = weight.toDouble()
+        count += weight
+        if (min.isNaN() || value < min) min = value
+        if (max.isNaN() || value > max) max = value
+        return this
+    }
+
+    /**
+     * Merges another digest into this one.
+     * @param [other] The digest to merge; it is not modified.
+     * @return This digest.
+     */
+    fun merge(other: TDigest): TDigest {
+        // copy the centroids and the pending values of other before compressing, as other may be this digest
+        val otherMeans = other.means.copyOf(other.centroids) + other.bufferMeans.copyOf(other.buffered)
+        val otherWeights = other.weights.copyOf(other.centroids) + other.bufferWeights.copyOf(other.buffered)
+        for (i in otherMeans.indices) {
+            if (buffered == bufferMeans.size) compress()
+            bufferMeans[buffered] = otherMeans[i]
+            bufferWeights[buffered++] = otherWeights[i]
+        }
+        count += other.count
+        if (!other.min.isNaN() && (min.isNaN() || other.min < min)) min = other.min
+        if (!other.max.isNaN() && (max.isNaN() || other.max > max)) max = other.max
+        return this
+    }
+
+    private fun compress() {
+        if (buffered == 0) return
+        val size = centroids + buffered
+        val allMeans = means.copyOf(size)
+        val allWeights = weights.copyOf(size)
+        bufferMeans.copyInto(allMeans, centroids, 0, buffered)
+        bufferWeights.copyInto(allWeights, centroids, 0, buffered)
+        buffered = 0
+        sort(allMeans, allWeights, 0, size - 1)
+
+        val total = allWeights.sum()
+        val mergedMeans = DoubleArray(size)
+        val mergedWeights = DoubleArray(size)
+        var merged = 0
+        var currentMean = allMeans[0]
+        var currentWeight = allWeights[0]
+        var weightSoFar = 0.0
+        var limit = total * limitQuantile(0.0)
+        for (i in 1 until size) {
+            val mean = allMeans[i]
+            val weight = allWeights[i]
+            if (weightSoFar + currentWeight + weight <= limit) {
+                currentWeight += weight
+                currentMean += (mean - currentMean) * weight / currentWeight
+            } else {
+                mergedMeans[merged] = currentMean
+                mergedWeights[merged++] = currentWeight
+                weightSoFar += currentWeight
+                limit = total * limitQuantile(weightSoFar / total)
+                currentMean = mean
+                currentWeight = weight
+            }
+        }
+        mergedMeans[merged] = currentMean
+        mergedWeights[merged++] = currentWeight
+        means = mergedMeans.copyOf(merged)
+        weights = mergedWeights.copyOf(merged)
+        centroids = merged
+    }
+
+    // sorts the centroids by mean without boxing, carrying the weights along
+    private fun sort(keys: DoubleArray, values: DoubleArray, from: Int, to: Int) {
+        var low = from
+        var high = to
+        while (high - low > 16) {
+            val pivot = keys[(low + high) ushr 1]
+            var i = low
+            var j = high
+            while (i <= j) {
+                while (keys[i] < pivot) i++
+                while (keys[j] > pivot) j--
+                if (i <= j) {
+                    swap(keys, values, i++, j--)
+                }
+            }
+            // recurse into the smaller half to bound the stack depth
+            if (j - low < high - i) {
+                sort(keys, values, low, j)
+                low = i
+            } else {
+                sort(keys, values, i, high)
+                high = j
+            }
+        }
+        for (i in low + 1..high) {
+            var j = i
+            while (j > low && keys[j - 1] > keys[j]) swap(keys, values, j - 1, j--)
+        }
+    }
+
+    private fun swap(keys: DoubleArray, values: DoubleArray, i: Int, j: Int) {
+        val key = keys[i]
+        keys[i] = keys[j]
+        keys[j] = key
+        val value = values[i]
+        values[i] = values[j]
+        values[j] = value
+    }
+
+    // the largest quantile a centroid starting at q may reach under the k1 scale function
+    private fun limitQuantile(q: Double): Double {
+        val k = compression / (2 * Math.PI) * Math.asin(2 * q - 1) + 1
+        return if (k >= compression / 4) 1.0 else (Math.sin(k * 2 * Math.PI / compression) + 1) / 2
+    }
+
+    /**
+     * Estimates the value at a quantile.
+     * @param [q] The quantile, between 0 and 1 inclusive.
+     * @return The estimated value, or [Double.NaN] if the digest is empty.
+     * @throws [IllegalArgumentException] [q] is outside [0, 1].
+     */
+    fun quantile(q: Double): Double {
+        require(q in 0.0..1.0) { "quantile must be between 0 and 1" }
+        compress()
+        if (centroids == 0) return Double.NaN
+        if (centroids == 1) return means[0]
+        val target = q * count
+        if (target <= weights[0] / 2) {
+            return min + (means[0] - min) * (target / (weights[0] / 2)).coerceIn(0.0, 1.0)
+        }
+        var cumulative = weights[0] / 2
+        for (i in 0 until centroids - 1) {
+            val step = (weights[i] + weights[i + 1]) / 2
+            if (target <= cumulative + step) {
+                return means[i] + (means[i + 1] - means[i]) * ((target - cumulative) / step)
+            }
+            cumulative += step
+        }
+        val last = centroids - 1
+        val tail = weights[last] / 2
+        return means[last] + (max - means[last]) * ((target - cumulative) / tail).coerceIn(0.0, 1.0)
+    }
+
+    /**
+     * Serializes the digest into a compact byte array.
+     * @return The serialized digest.
+     */
+    fun toByteArray(): ByteArray {
+        compress()
+        val buffer = ByteBuffer.allocate(8 * 4 + 4 + centroids * 16)
+        buffer.putDouble(compression).putLong(count).putDouble(min).putDouble(max).putInt(centroids)
+        for (i in 0 until centroids) buffer.putDouble(means[i]).putDouble(weights[i])
+        return buffer.array()
+    }
+
+    companion object {
+        private const val serialVersionUID = 1L
+
+        /**
+         * Restores a digest serialized by [toByteArray].
+         * @param [bytes] The serialized digest.
+         * @return The restored digest.
+         */
+        @JvmStatic
+        fun fromByteArray(bytes: ByteArray): TDigest {
+            val buffer = ByteBuffer.wrap(bytes)
+            val digest = TDigest(buffer.getDouble())
+            digest.count = buffer.getLong()
+            digest.min = buffer.getDouble()
+            digest.max = buffer.getDouble()
+            digest.centroids = buffer.getInt()
+            digest.means = DoubleArray(digest.centroids)
+            digest.weights = DoubleArray(digest.centroids)
+            for (i in 0 until digest.centroids) {
+                digest.means[i] = buffer.getDouble()
+                digest.weights[i] = buffer.getDouble()
+            }
+            return digest
+        }
+    }
+}
+
+fun <TSource> Sequence<TSource>.percentile(selector: (TSource) -> Double, vararg quantiles: Double): DoubleArray {
+    quantiles.forEach { require(it in 0.0..1.0) { "quantile must be between 0 and 1" } }
+    val digest = TDigest()
+    for (element in this) {
+        digest.add(selector(element))
+    }
+    return DoubleArray(quantiles.size) { digest.quantile(quantiles[it]) }
+}
+
+fun <TSource, TKey> Sequence<TSource>.percentileBy(
+    keySelector: (TSource) -> TKey,
+    selector: (TSource) -> Double,
+    vararg quantiles: Double
+): Sequence<Map.Entry<TKey, DoubleArray>> {
+    quantiles.forEach { require(it in 0.0..1.0) { "quantile must be between 0 and 1" } }
+    return sequence {
+        val digests = this@percentileBy.groupingBy(keySelector)
+            .fold({ _, _ -> TDigest() }) { _, digest, element -> digest.add(selector(element)) }
+        for (entry in digests) {
+            yield(AbstractMap.SimpleImmutableEntry(entry.key, DoubleArray(quantiles.size) { entry.value.quantile(quantiles[it]) }))
+        }
+    }
+}
+
+fun <TSource> Sequence<TSource>.histogram(selector: (TSource) -> Double, boundaries: DoubleArray): LongArray {
+    for (i in 1 until boundaries.size) {
+        require(boundaries[i - 1] < boundaries[i]) { "boundaries must be strictly increasing" }
+    }
+    val counts = LongArray(boundaries.size + 1)
+    for (element in this) {
+        val value = selector(element)
+        // index of the first boundary greater than the value
+        var low = 0
+        var high = boundaries.size
+        while (low < high) {
+            val mid = (low + high) ushr 1
+            if (boundaries[mid] > value) high = mid else low = mid + 1
+        }
+        counts[low]++
+    }
+    return counts
+}
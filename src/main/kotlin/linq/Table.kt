@@ -0,0 +1,466 @@
+package linq
+
+import java.util.AbstractMap
+import java.util.function.DoublePredicate
+import java.util.function.IntPredicate
+import java.util.function.LongPredicate
+import java.util.function.Predicate
+
+/**
+ * The values of one column in a primitive array. Strings are stored as codes into a [Dictionary], -1 standing for null.
+ */
+internal class TableColumn(
+    val name: String,
+    val type: ColumnType,
+    capacity: Int,
+    val dictionary: Dictionary<String> = Dictionary()
+) {
+    var ints = if (type == ColumnType.INT || type == ColumnType.STRING) IntArray(capacity) else EMPTY_INTS
+    var longs = if (type == ColumnType.LONG) LongArray(capacity) else EMPTY_LONGS
+    var doubles = if (type == ColumnType.DOUBLE) DoubleArray(capacity) else EMPTY_DOUBLES
+
+    fun set(index: Int, value: Any?) {
+        when (type) {
+            ColumnType.INT -> ints[index] = value as Int
+            ColumnType.LONG -> longs[index] = value as Long
+            ColumnType.DOUBLE -> doubles[index] = value as Double
+            ColumnType.STRING -> ints[index] = (value as String?)?.let { dictionary.encode(it) } ?: -1
+        }
+    }
+
+    fun resize(capacity: Int) {
+        when (type) {
+            ColumnType.INT, ColumnType.STRING -> ints = ints.copyOf(capacity)
+            ColumnType.LONG -> longs = longs.copyOf(capacity)
+            ColumnType.DOUBLE -> doubles = doubles.copyOf(capacity)
+        }
+    }
+
+    // the dictionary is append-only, so the copy can share it
+    fun copy(size: Int): TableColumn = TableColumn(name, type, 0, dictionary).also {
+        it.ints = ints.copyOf(minOf(size, ints.size))
+        it.longs = longs.copyOf(minOf(size, longs.size))
+        it.doubles = doubles.copyOf(minOf(size, doubles.size))
+    }
+
+    fun getString(row: Int): String? = ints[row].let { if (it < 0) null else dictionary.decode(it) }
+
+    /**
+     * The value of a row as a grouping or join key; integral columns share one key space.
+     */
+    fun key(row: Int): Any? = when (type) {
+        ColumnType.INT -> ints[row].toLong()
+        ColumnType.LONG -> longs[row]
+        ColumnType.DOUBLE -> doubles[row]
+        ColumnType.STRING -> getString(row)
+    }
+
+    fun number(row: Int): Double = when (type) {
+        ColumnType.INT -> ints[row].toDouble()
+        ColumnType.LONG -> longs[row].toDouble()
+        ColumnType.DOUBLE -> doubles[row]
+        ColumnType.STRING -> throw IllegalArgumentException("column $name is not numeric")
+    }
+
+    private companion object {
+        val EMPTY_INTS = IntArray(0)
+        val EMPTY_LONGS = LongArray(0)
+        val EMPTY_DOUBLES = DoubleArray(0)
+    }
+}
+
+private const val UNDECIDED: Byte = 0
+private const val ACCEPTED: Byte = 1
+private const val REJECTED: Byte = 2
+
+/**
+ * Loads elements into the columns of a [Table].
+ */
+class TableBuilder<TSource> internal constructor(schema: Schema<TSource>) {
+    private val selectors = schema.columns.map { it.selector }
+    private val columns = schema.columns.map { TableColumn(it.name, it.type, 16) }
+    private var size = 0
+    private var capacity = 16
+
+    init {
+        require(columns.isNotEmpty()) { "schema has no columns" }
+    }
+
+    /**
+     * Splits an element into the columns of the table.
+     * @param [element] The element to add.
+     * @return This builder.
+     */
+    fun add(element: TSource): TableBuilder<TSource> {
+        if (size == capacity) {
+            capacity = Math.multiplyExact(capacity, 2)
+            columns.forEach { it.resize(capacity) }
+        }
+        for (c in columns.indices) {
+            columns[c].set(size, selectors[c](element))
+        }
+        size++
+        return this
+    }
+
+    /**
+     * Adds every element of a sequence.
+     * @param [elements] The elements to add.
+     * @return This builder.
+     */
+    fun addAll(elements: Iterable<TSource>): TableBuilder<TSource> {
+        elements.forEach { add(it) }
+        return this
+    }
+
+    /**
+     * Creates a table of the elements added so far. The builder can keep adding elements afterwards without
+     * affecting the table.
+     * @return The table.
+     */
+    fun build(): Table = Table(columns.map { it.copy(size) }, size, null)
+}
+
+/**
+ * An immutable in-memory table storing each column in a primitive array (struct of arrays) instead of one object per
+ * row, with strings dictionary-encoded. Filters scan a single column array, and filtered or projected tables are
+ * views that share the column arrays, holding only the matching row numbers.
+ */
+class Table internal constructor(
+    private val data: List<TableColumn>,
+    private val size: Int,
+    private val selection: IntArray?
+) : Iterable<TableRow> {
+    /**
+     * The column names, in declaration order.
+     */
+    val columns: List<String> = data.map { it.name }
+
+    /**
+     * The column types, in declaration order.
+     */
+    val types: List<ColumnType> = data.map { it.type }
+
+    /**
+     * The number of rows.
+     */
+    val rowCount: Int get() = selection?.size ?: size
+
+    private fun rowAt(i: Int): Int = selection?.get(i) ?: i
+
+    private fun column(name: String): TableColumn =
+        data.firstOrNull { it.name == name } ?: throw NoSuchElementException("no column $name")
+
+    private fun column(name: String, type: ColumnType): TableColumn {
+        val column = column(name)
+        require(column.type == type) { "column $name is ${column.type}, not $type" }
+        return column
+    }
+
+    /**
+     * Returns the rows through a single [TableRow] that moves from row to row, so a row must not be retained.
+     */
+    override fun iterator(): Iterator<TableRow> {
+        val row = TableRow(data, columns)
+        return object : Iterator<TableRow> {
+            private var i = 0
+
+            override fun hasNext(): Boolean = i < rowCount
+
+            override fun next(): TableRow {
+                if (i >= rowCount) throw NoSuchElementException()
+                row.index = rowAt(i++)
+                return row
+            }
+        }
+    }
+
+    /**
+     * @return An [Enumerable] over the rows of the table, through a single reused [TableRow].
+     */
+    fun rows(): Enumerable<TableRow> = Enumerable(asSequence())
+
+    // keeps the selected rows whose value passes the test, scanning one column array
+    private inline fun filter(test: (Int) -> Boolean): Table {
+        val count = rowCount
+        val result = IntArray(count)
+        var matched = 0
+        for (i in 0 until count) {
+            val row = rowAt(i)
+            if (test(row)) result[matched++] = row
+        }
+        return Table(data, size, result.copyOf(matched))
+    }
+
+    /**
+     * Filters the rows on the values of an [Int] column.
+     * @param [column] The column name.
+     * @param [predicate] A function to test each value.
+     * @return A view of the rows whose value satisfies the condition.
+     * @throws [NoSuchElementException] There is no such column.
+     * @throws [IllegalArgumentException] The column is not an [Int] column.
+     */
+    fun whereInt(column: String, predicate: IntPredicate): Table {
+        val values = column(column, ColumnType.INT).ints
+        return filter { predicate.test(values[it]) }
+    }
+
+    /**
+     * Filters the rows on the values of a [Long] column.
+     * @param [column] The column name.
+     * @param [predicate] A function to test each value.
+     * @return A view of the rows whose value satisfies the condition.
+     * @throws [NoSuchElementException] There is no such column.
+     * @throws [IllegalArgumentException] The column is not a [Long] column.
+     */
+    fun whereLong(column: String, predicate: LongPredicate): Table {
+        val values = column(column, ColumnType.LONG).longs
+        return filter { predicate.test(values[it]) }
+    }
+
+    /**
+     * Filters the rows on the values of a [Double] column.
+     * @param [column] The column name.
+     * @param [predicate] A function to test each value.
+     * @return A view of the rows whose value satisfies the condition.
+     * @throws [NoSuchElementException] There is no such column.
+     * @throws [IllegalArgumentException] The column is not a [Double] column.
+     */
+    fun whereDouble(column: String, predicate: DoublePredicate): Table {
+        val values = column(column, ColumnType.DOUBLE).doubles
+        return filter { predicate.test(values[it]) }
+    }
+
+    /**
+     * Filters the rows on the values of a [String] column. The predicate is evaluated at most once per distinct
+     * value, and the rows are then matched by dictionary code.
+     * @param [column] The column name.
+     * @param [predicate] A function to test each value, which may be null.
+     * @return A view of the rows whose value satisfies the condition.
+     * @throws [NoSuchElementException] There is no such column.
+     * @throws [IllegalArgumentException] The column is not a [String] column.
+     */
+    fun whereString(column: String, predicate: Predicate<String?>): Table {
+        val strings = column(column, ColumnType.STRING)
+        val codes = strings.ints
+        val dictionary = strings.dictionary
+        // the verdict for null at index 0 and for each distinct value at code + 1, decided on first sight:
+        // 0 undecided, 1 accepted, 2 rejected
+        val verdicts = ByteArray(dictionary.size + 1)
+        return filter {
+            val slot = codes[it] + 1
+            if (verdicts[slot] == UNDECIDED) {
+                val value = if (slot == 0) null else dictionary.decode(slot - 1)
+                verdicts[slot] = if (predicate.test(value)) ACCEPTED else REJECTED
+            }
+            verdicts[slot] == ACCEPTED
+        }
+    }
+
+    /**
+     * Filters the rows with a predicate over whole rows.
+     * @param [predicate] A function to test each row; the row must not be retained.
+     * @return A view of the rows that satisfy the condition.
+     */
+    fun where(predicate: (TableRow) -> Boolean): Table {
+        val row = TableRow(data, columns)
+        return filter {
+            row.index = it
+            predicate(row)
+        }
+    }
+
+    /**
+     * Projects the table onto some of its columns.
+     * @param [columns] The names of the columns to keep, in the order to keep them.
+     * @return A view of the same rows with only the given columns.
+     * @throws [NoSuchElementException] A column does not exist.
+     */
+    fun select(vararg columns: String): Table = Table(columns.map { column(it) }, size, selection)
+
+    /**
+     * Projects each row into a new form.
+     * @param [selector] A transform function to apply to each row; the row must not be retained.
+     * @return An [Enumerable] whose elements are the result of invoking the transform function on each row.
+     */
+    fun <TResult> select(selector: (TableRow) -> TResult): Enumerable<TResult> = rows().select(selector)
+
+    // assigns each selected row the number of its group, numbering groups in order of first appearance
+    private fun group(column: TableColumn): Pair<IntArray, List<Any?>> {
+        val count = rowCount
+        val groups = IntArray(count)
+        val keys = ArrayList<Any?>()
+        if (column.type == ColumnType.STRING) {
+            // strings are grouped by dictionary code, without hashing
+            val slots = IntArray(column.dictionary.size + 1) { -1 }
+            for (i in 0 until count) {
+                val code = column.ints[rowAt(i)] + 1
+                if (slots[code] < 0) {
+                    slots[code] = keys.size
+                    keys.add(if (code == 0) null else column.dictionary.decode(code - 1))
+                }
+                groups[i] = slots[code]
+            }
+        } else {
+            val slots = HashMap<Any?, Int>()
+            for (i in 0 until count) {
+                val key = column.key(rowAt(i))
+                groups[i] = slots.getOrPut(key) {
+                    keys.add(key)
+                    keys.size - 1
+                }
+            }
+        }
+        return Pair(groups, keys)
+    }
+
+    /**
+     * Applies an accumulator function over the rows, grouping results by the value of a column.
+     * [Int] and [Long] keys are returned as [Long].
+     * @param [keyColumn] The name of the column to group by.
+     * @param [seed] The initial accumulator value of each group.
+     * @param [func] An accumulator function to be invoked on each row; the row must not be retained.
+     * @return An [Enumerable] containing the aggregate of each key, in order of first appearance.
+     * @throws [NoSuchElementException] There is no such column.
+     */
+    fun <TAccumulate> aggregateBy(
+        keyColumn: String,
+        seed: TAccumulate,
+        func: (TAccumulate, TableRow) -> TAccumulate
+    ): Enumerable<Map.Entry<Any?, TAccumulate>> {
+        val (groups, keys) = group(column(keyColumn))
+        val accumulators = MutableList(keys.size) { seed }
+        val row = TableRow(data, columns)
+        for (i in groups.indices) {
+            row.index = rowAt(i)
+            accumulators[groups[i]] = func(accumulators[groups[i]], row)
+        }
+        return Enumerable(keys.indices.asSequence().map { AbstractMap.SimpleImmutableEntry(keys[it], accumulators[it]) })
+    }
+
+    /**
+     * Sums a numeric column per value of another column, accumulating into a primitive array.
+     * [Int] and [Long] keys are returned as [Long].
+     * @param [keyColumn] The name of the column to group by.
+     * @param [valueColumn] The name of the numeric column to sum.
+     * @return An [Enumerable] containing the sum of each key, in order of first appearance.
+     * @throws [NoSuchElementException] A column does not exist.
+     * @throws [IllegalArgumentException] [valueColumn] is not numeric.
+     */
+    fun sumBy(keyColumn: String, valueColumn: String): Enumerable<Map.Entry<Any?, Double>> {
+        val values = column(valueColumn)
+        require(values.type != ColumnType.STRING) { "column $valueColumn is not numeric" }
+        val (groups, keys) = group(column(keyColumn))
+        val sums = DoubleArray(keys.size)
+        for (i in groups.indices) {
+            sums[groups[i]] += values.number(rowAt(i))
+        }
+        return Enumerable(keys.indices.asSequence().map { AbstractMap.SimpleImmutableEntry(keys[it], sums[it]) })
+    }
+
+    /**
+     * Correlates the rows of two tables on equal column values with a hash join built over [inner]. String columns
+     * are matched by translating dictionary codes once per distinct value; null values match nothing.
+     * @param [inner] The table to join.
+     * @param [outerColumn] The key column of this table.
+     * @param [innerColumn] The key column of [inner].
+     * @param [resultSelector] A function to create a result from two matching rows; the rows must not be retained.
+     * @return An [Enumerable] of the results, in the order of the rows of this table.
+     * @throws [NoSuchElementException] A column does not exist.
+     * @throws [IllegalArgumentException] The key columns are not both strings, both doubles or both integral.
+     */
+    fun <TResult> join(
+        inner: Table,
+        outerColumn: String,
+        innerColumn: String,
+        resultSelector: (TableRow, TableRow) -> TResult
+    ): Enumerable<TResult> {
+        val outerKeys = column(outerColumn)
+        val innerKeys = inner.column(innerColumn)
+        // INT and LONG keys are both compared as Long; DOUBLE and STRING keys only match their own type
+        val integral = setOf(ColumnType.INT, ColumnType.LONG)
+        require(outerKeys.type == innerKeys.type || outerKeys.type in integral && innerKeys.type in integral) {
+            "cannot join ${outerKeys.type} column $outerColumn to ${innerKeys.type} column $innerColumn"
+        }
+        return Enumerable(sequence {
+            // the inner rows of each group, laid out contiguously
+            val (groups, keys) = inner.group(innerKeys)
+            val (starts, positions) = buckets(groups, keys.size)
+            val members = IntArray(positions.size) { inner.rowAt(positions[it]) }
+
+            val outerRow = TableRow(data, columns)
+            val innerRow = TableRow(inner.data, inner.columns)
+            if (outerKeys.type == ColumnType.STRING) {
+                val slots = HashMap<Any?, Int>(keys.size * 2)
+                keys.forEachIndexed { group, key -> if (key != null) slots[key] = group }
+                // index code + 1, like the codes of group(); -1 for values without matches
+                val translation = IntArray(outerKeys.dictionary.size + 1) {
+                    if (it == 0) -1 else slots[outerKeys.dictionary.decode(it - 1)] ?: -1
+                }
+                for (i in 0 until rowCount) {
+                    val row = rowAt(i)
+                    val group = translation[outerKeys.ints[row] + 1]
+                    if (group < 0) continue
+                    outerRow.index = row
+                    for (m in starts[group] until starts[group + 1]) {
+                        innerRow.index = members[m]
+                        yield(resultSelector(outerRow, innerRow))
+                    }
+                }
+            } else {
+                val slots = HashMap<Any?, Int>(keys.size * 2)
+                keys.forEachIndexed { group, key -> slots[key] = group }
+                for (i in 0 until rowCount) {
+                    val row = rowAt(i)
+                    val group = slots[outerKeys.key(row)] ?: continue
+                    outerRow.index = row
+                    for (m in starts[group] until starts[group + 1]) {
+                        innerRow.index = members[m]
+                        yield(resultSelector(outerRow, innerRow))
+                    }
+                }
+            }
+        })
+    }
+}
+
+/**
+ * A view of one row of a [Table], reused as the table is scanned.
+ */
+class TableRow internal constructor(
+    private val data: List<TableColumn>,
+    /**
+     * The column names.
+     */
+    val columns: List<String>
+) {
+    internal var index = 0
+
+    private fun column(column: Int, type: ColumnType): TableColumn {
+        val data = data[column]
+        if (data.type != type) throw IllegalArgumentException("column ${data.name} is ${data.type}, not $type")
+        return data
+    }
+
+    fun getInt(column: Int): Int = column(column, ColumnType.INT).ints[index]
+
+    fun getLong(column: Int): Long = column(column, ColumnType.LONG).longs[index]
+
+    fun getDouble(column: Int): Double = column(column, ColumnType.DOUBLE).doubles[index]
+
+    fun getString(column: Int): String? = column(column, ColumnType.STRING).getString(index)
+
+    fun getInt(column: String): Int = getInt(indexOf(column))
+
+    fun getLong(column: String): Long = getLong(indexOf(column))
+
+    fun getDouble(column: String): Double = getDouble(indexOf(column))
+
+    fun getString(column: String): String? = getString(indexOf(column))
+
+    private fun indexOf(column: String): Int {
+        val index = columns.indexOf(column)
+        if (index < 0) throw NoSuchElementException("no column $column")
+        return index
+    }
+}
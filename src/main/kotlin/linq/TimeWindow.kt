@@ -0,0 +1,89 @@
+package linq
+
+import java.util.TreeMap
+
+/**
+ * The aggregate of the elements whose timestamps fall in `[start, end)`.
+ */
+data class TimeWindow<out TResult>(val start: Long, val end: Long, val value: TResult)
+
+fun <TSource, TAccumulate> Sequence<TSource>.windowByTime(
+    timestampSelector: (TSource) -> Long,
+    size: Long,
+    allowedLateness: Long,
+    seedSelector: () -> TAccumulate,
+    func: (TAccumulate, TSource) -> TAccumulate
+): Sequence<TimeWindow<TAccumulate>> {
+    require(size > 0) { "size must be positive" }
+    require(allowedLateness >= 0) { "allowedLateness must not be negative" }
+    return sequence {
+        // only windows that the watermark has not passed yet are kept
+        val open = TreeMap<Long, TAccumulate>()
+        var watermark = Long.MIN_VALUE
+        for (element in this@windowByTime) {
+            val timestamp = timestampSelector(element)
+            val start = Math.floorDiv(timestamp, size) * size
+            if (start + size <= watermark) continue
+            open[start] = func(open[start] ?: seedSelector(), element)
+            watermark = maxOf(watermark, timestamp - allowedLateness)
+            while (open.isNotEmpty() && open.firstKey() + size <= watermark) {
+                val window = open.pollFirstEntry()
+                yield(TimeWindow(window.key, window.key + size, window.value))
+            }
+        }
+        for ((start, value) in open) {
+            yield(TimeWindow(start, start + size, value))
+        }
+    }
+}
+
+private class Session<TAccumulate>(val start: Long, var last: Long, var value: TAccumulate)
+
+fun <TSource, TAccumulate> Sequence<TSource>.sessionWindows(
+    timestampSelector: (TSource) -> Long,
+    gap: Long,
+    allowedLateness: Long,
+    seedSelector: () -> TAccumulate,
+    func: (TAccumulate, TSource) -> TAccumulate,
+    combiner: (TAccumulate, TAccumulate) -> TAccumulate
+): Sequence<TimeWindow<TAccumulate>> {
+    require(gap > 0) { "gap must be positive" }
+    require(allowedLateness >= 0) { "allowedLateness must not be negative" }
+    return sequence {
+        // open sessions are disjoint, so ordering them by start also orders them by end
+        val open = TreeMap<Long, Session<TAccumulate>>()
+        var watermark = Long.MIN_VALUE
+        for (element in this@sessionWindows) {
+            val timestamp = timestampSelector(element)
+            var session = open.floorEntry(timestamp)?.value?.takeIf { timestamp < it.last + gap }
+            // a late element is only dropped when no open session absorbs it, either the one before it or one
+            // starting less than gap after it, and the session it would start has already been passed
+            if (session == null && timestamp + gap <= watermark &&
+                open.higherEntry(timestamp)?.value?.let { it.start < timestamp + gap } != true
+            ) continue
+            if (session == null) {
+                session = Session(timestamp, timestamp, func(seedSelector(), element))
+                open[timestamp] = session
+            } else {
+                session.value = func(session.value, element)
+                session.last = maxOf(session.last, timestamp)
+            }
+            // a late element can bridge the gap to the following sessions
+            while (true) {
+                val next = open.higherEntry(session.start)?.value ?: break
+                if (next.start >= session.last + gap) break
+                session.value = combiner(session.value, next.value)
+                session.last = maxOf(session.last, next.last)
+                open.remove(next.start)
+            }
+            watermark = maxOf(watermark, timestamp - allowedLateness)
+            while (open.isNotEmpty() && open.firstEntry().value.let { it.last + gap <= watermark }) {
+                val closed = open.pollFirstEntry().value
+                yield(TimeWindow(closed.start, closed.last + gap, closed.value))
+            }
+        }
+        for (session in open.values) {
+            yield(TimeWindow(session.start, session.last + gap, session.value))
+        }
+    }
+}
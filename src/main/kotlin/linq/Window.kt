@@ -0,0 +1,117 @@
+package linq
+
+/**
+ * A fixed-capacity ring buffer exposed as a read-only list of its contents, oldest first.
+ */
+internal class RingBuffer<T>(private val capacity: Int) : AbstractList<T>() {
+    private val items = arrayOfNulls<Any?>(capacity)
+    private var head = 0
+    private var count = 0
+
+    override val size: Int get() = count
+
+    override fun get(index: Int): T {
+        if (index < 0 || index >= count) throw IndexOutOfBoundsException("index: $index, size: $count")
+        @Suppress("UNCHECKED_CAST")
+        return items[(head + index) % capacity] as T
+    }
+
+    fun isFull(): Boolean = count == capacity
+
+    fun add(item: T) {
+        items[(head + count) % capacity] = item
+        count++
+    }
+
+    fun removeFirst(n: Int) {
+        repeat(minOf(n, count)) {
+            items[head] = null
+            head = (head + 1) % capacity
+            count--
+        }
+    }
+}
+
+fun <TSource> Sequence<TSource>.window(size: Int, step: Int): Sequence<List<TSource>> {
+    require(size > 0) { "size must be positive" }
+    require(step > 0) { "step must be positive" }
+    return sequence {
+        val buffer = RingBuffer<TSource>(size)
+        var skip = 0
+        for (element in this@window) {
+            if (skip > 0) {
+                skip--
+                continue
+            }
+            buffer.add(element)
+            if (buffer.isFull()) {
+                yield(buffer)
+                buffer.removeFirst(step)
+                skip = maxOf(step - size, 0)
+            }
+        }
+    }
+}
+
+fun <TSource, TAccumulate> Sequence<TSource>.scan(
+    seed: TAccumulate,
+    func: (TAccumulate, TSource) -> TAccumulate
+): Sequence<TAccumulate> = sequence {
+    var accumulator = seed
+    for (element in this@scan) {
+        accumulator = func(accumulator, element)
+        yield(accumulator)
+    }
+}
+
+fun <TSource> Sequence<TSource>.movingSum(size: Int, selector: (TSource) -> Double): Sequence<Double> {
+    require(size > 0) { "size must be positive" }
+    return sequence {
+        val values = DoubleArray(size)
+        var sum = 0.0
+        var count = 0L
+        for (element in this@movingSum) {
+            val index = (count % size).toInt()
+            val value = selector(element)
+            sum += value - values[index]
+            values[index] = value
+            count++
+            // re-add the window once per wrap-around so that rounding errors from subtraction cannot accumulate
+            if (index == size - 1) sum = values.sum()
+            if (count >= size) yield(sum)
+        }
+    }
+}
+
+internal fun <TSource> Sequence<TSource>.movingExtreme(
+    size: Int,
+    selector: (TSource) -> Double,
+    max: Boolean
+): Sequence<Double> {
+    require(size > 0) { "size must be positive" }
+    return sequence {
+        // a monotonic deque of candidates, stored as a ring of (index, value) pairs
+        val indices = LongArray(size)
+        val values = DoubleArray(size)
+        var head = 0
+        var length = 0
+        var index = 0L
+        for (element in this@movingExtreme) {
+            val value = selector(element)
+            if (length > 0 && indices[head] <= index - size) {
+                head = (head + 1) % size
+                length--
+            }
+            while (length > 0) {
+                val last = values[(head + length - 1) % size]
+                if (if (max) last > value else last < value) break
+                length--
+            }
+            val tail = (head + length) % size
+            indices[tail] = index
+            values[tail] = value
+            length++
+            if (++index >= size) yield(values[head])
+        }
+    }
+}
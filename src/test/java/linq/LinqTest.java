@@ -2,9 +2,31 @@ package linq;
 
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
 
 import static linq.Linq.*;
 import static org.junit.jupiter.api.Assertions.*;
@@ -1540,4 +1562,1425 @@ public class LinqTest {
         assertEquals(3, enumerable.count());
         assertEquals("a", enumerable.first());
     }
+
+    // ========== 测试 ofDelimited 方法 ==========
+
+    private static ByteArrayInputStream input(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testOfDelimited() {
+        Enumerable<DelimitedRow> rows = ofDelimited(input("id,name,price\n1,apple,1.5\r\n2,\"banana, ripe\",-0.25\n\n3,\"say \"\"hi\"\"\",100"), ',', true);
+
+        List<String> result = rows.select(r -> r.getInt(0) + "|" + r.getString(1) + "|" + r.getDouble(2)).toList();
+
+        assertEquals(Arrays.asList("1|apple|1.5", "2|banana, ripe|-0.25", "3|say \"hi\"|100.0"), result);
+    }
+
+    @Test
+    public void testOfDelimitedProjection() {
+        Enumerable<DelimitedRow> rows = ofDelimited(input("a\tb\tc\n1\t9000000000\t3\n4\t5"), '\t', true, 2, 1);
+
+        List<String> result = new ArrayList<>();
+        for (DelimitedRow row : rows) {
+            assertEquals(2, row.getFieldCount());
+            result.add((row.isEmpty(0) ? "-" : row.getString(0)) + ":" + row.getLong(1));
+        }
+
+        // 第二行缺少第三列，按空字段处理
+        assertEquals(Arrays.asList("3:9000000000", "-:5"), result);
+    }
+
+    @Test
+    public void testOfDelimitedInvalidNumber() {
+        DelimitedRow row = ofDelimited(input("1,x,99999999999\n"), ',', false).first();
+
+        assertEquals(1, row.getInt(0));
+        assertThrows(NumberFormatException.class, () -> row.getInt(1));
+        assertThrows(NumberFormatException.class, () -> row.getInt(2));
+        assertThrows(IndexOutOfBoundsException.class, () -> row.getInt(3));
+        assertArrayEquals("x".getBytes(StandardCharsets.UTF_8), row.getBytes(1));
+    }
+
+    @Test
+    public void testOfCsvFile() throws Exception {
+        Path file = Files.createTempFile("linq", ".csv");
+        try {
+            StringBuilder text = new StringBuilder("value\n");
+            for (int i = 0; i < 100_000; i++) {
+                text.append("\"").append(i).append("\"\n");
+            }
+            Files.writeString(file, text);
+
+            // 可重复枚举，且跨越读缓冲区边界
+            Enumerable<DelimitedRow> rows = ofCsv(file, true);
+            assertEquals(100_000, rows.count());
+            assertEquals(4_999_950_000L, rows.sumLong(r -> r.getLong(0)));
+
+            // 提前关闭迭代器会释放文件句柄
+            Iterator<DelimitedRow> iterator = rows.iterator();
+            assertEquals(0, iterator.next().getInt(0));
+            ((AutoCloseable) iterator).close();
+            assertFalse(iterator.hasNext());
+
+            // 部分读取时由调用方持有输入流
+            try (InputStream in = Files.newInputStream(file)) {
+                assertEquals(0, ofDelimited(in, ',', true).first().getInt(0));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    // ========== 测试 writeTo 和 read 方法 ==========
+
+    @Test
+    public void testWriteToAndRead() throws IOException {
+        Path file = Files.createTempFile("linq", ".col");
+        try {
+            Schema<Person> schema = new Schema<Person>()
+                    .stringColumn("name", Person::getName)
+                    .intColumn("age", Person::getAge)
+                    .doubleColumn("salary", Person::getSalary);
+            getPersonEnumerable().writeTo(file, schema, 2);
+
+            ColumnarFile columnar = read(file);
+            assertEquals(Arrays.asList("name", "age", "salary"), columnar.getColumns());
+            assertEquals(5, columnar.getRowCount());
+            assertEquals(3, columnar.getBlockCount());
+
+            List<String> names = columnar.select("name", "salary").rows()
+                    .select(r -> r.getString(0) + ":" + r.getDouble("salary"))
+                    .toList();
+            assertEquals(Arrays.asList("Alice:50000.0", "Bob:60000.0", "Charlie:55000.0", "David:70000.0", "Eve:65000.0"), names);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testReadWhereSkipsBlocks() throws IOException {
+        Path file = Files.createTempFile("linq", ".col");
+        try {
+            Schema<Integer> schema = new Schema<Integer>()
+                    .longColumn("id", i -> (long) i)
+                    .stringColumn("label", i -> i % 2 == 0 ? null : "n" + i);
+            of(IntStream.range(0, 10_000).boxed()).writeTo(file, schema, 1000);
+
+            ColumnarFile columnar = read(file).whereLong("id", 2_500, 3_499).select("label");
+            // 只有两个块与区间重叠
+            assertEquals(1000, columnar.rows().count());
+            assertEquals(500, columnar.rows().count(r -> r.getString(0) == null));
+            assertEquals("n2501", columnar.rows().elementAt(1).getString("label"));
+            assertThrows(IllegalArgumentException.class, () -> read(file).whereInt("id", 0, 1));
+            assertThrows(NoSuchElementException.class, () -> read(file).select("missing"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testReadInvalidFile() throws IOException {
+        Path file = Files.createTempFile("linq", ".col");
+        try {
+            Files.writeString(file, "definitely not columnar");
+            assertThrows(IOException.class, () -> read(file));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    // ========== 测试 LookUpSnapshot ==========
+
+    @Test
+    public void testLookUpSnapshot() throws IOException {
+        Path file = Files.createTempFile("linq", ".lookup");
+        try {
+            LookUp<Integer, String> lookUp = getPersonEnumerable().toLookUp(Person::getAge, Person::getName);
+            LookUpSnapshot.write(lookUp, file, Codecs.INT, Codecs.STRING);
+
+            LookUp<Integer, String> snapshot = LookUpSnapshot.open(file, Codecs.INT, Codecs.STRING);
+            assertTrue(snapshot.contains(25));
+            assertFalse(snapshot.contains(40));
+            assertEquals(Arrays.asList("Bob", "Eve"), snapshot.get(30).toList());
+            assertEquals(0, snapshot.get(40).count());
+
+            int total = 0;
+            for (Group<Integer, String> group : snapshot) {
+                assertEquals(lookUp.get(group.getKey()).toList(), group.getElements().toList());
+                total += group.getElements().count();
+            }
+            assertEquals(5, total);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testLookUpSnapshotNullKeysAndManyEntries() throws IOException {
+        Path file = Files.createTempFile("linq", ".lookup");
+        try {
+            LookUp<String, Long> lookUp = of(IntStream.range(0, 20_000).boxed())
+                    .toLookUp(i -> i % 7 == 0 ? null : "k" + (i % 5_000), Integer::longValue);
+            LookUpSnapshot.write(lookUp, file, Codecs.STRING, Codecs.LONG);
+
+            LookUp<String, Long> snapshot = LookUpSnapshot.open(file, Codecs.STRING, Codecs.LONG);
+            assertTrue(snapshot.contains(null));
+            assertEquals(lookUp.get(null).count(), snapshot.get(null).count());
+            for (int i = 0; i < 5_000; i++) {
+                assertEquals(lookUp.get("k" + i).toList(), snapshot.get("k" + i).toList());
+            }
+            assertFalse(snapshot.contains("k5000"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    // ========== 测试 countDistinctApprox 方法 ==========
+
+    @Test
+    public void testCountDistinctApprox() {
+        Enumerable<String> clicks = of(IntStream.range(0, 200_000).boxed()).select(i -> "user" + (i % 50_000));
+
+        long estimate = clicks.countDistinctApprox(s -> s);
+        assertEquals(50_000, estimate, 50_000 * 0.03);
+
+        // 基数较小时使用线性计数，结果几乎精确
+        assertEquals(5, getStringEnumerable().countDistinctApprox(s -> s, 12));
+        assertEquals(0, of().countDistinctApprox(s -> s));
+        assertThrows(IllegalArgumentException.class, () -> clicks.countDistinctApprox(s -> s, 3));
+    }
+
+    @Test
+    public void testCountDistinctApproxBy() {
+        Map<Integer, Long> result = getPersonEnumerable()
+                .countDistinctApproxBy(Person::getAge, Person::getName, 10)
+                .toMap(Map.Entry::getKey, Map.Entry::getValue);
+
+        assertEquals(Map.of(25, 2L, 30, 2L, 35, 1L), result);
+    }
+
+    @Test
+    public void testHyperLogLogMergeAndSerialize() {
+        HyperLogLog left = new HyperLogLog(14);
+        HyperLogLog right = new HyperLogLog(14);
+        for (int i = 0; i < 30_000; i++) {
+            left.add((long) i);
+            right.add((long) (i + 15_000));
+        }
+
+        HyperLogLog restored = HyperLogLog.fromByteArray(left.toByteArray());
+        assertEquals(left.estimate(), restored.estimate());
+        assertEquals(45_000, restored.merge(right).estimate(), 45_000 * 0.03);
+        assertThrows(IllegalArgumentException.class, () -> left.merge(new HyperLogLog(10)));
+    }
+
+    // ========== 测试 percentile 和 histogram 方法 ==========
+
+    @Test
+    public void testPercentile() {
+        // 打乱顺序的 0..99999
+        Enumerable<Integer> latencies = of(IntStream.range(0, 100_000).map(i -> (int) ((i * 7919L) % 100_000)).boxed());
+
+        double[] result = latencies.percentile(Integer::doubleValue, 0.0, 0.5, 0.99, 1.0);
+
+        assertEquals(0.0, result[0]);
+        assertEquals(50_000, result[1], 500);
+        assertEquals(99_000, result[2], 100);
+        assertEquals(99_999.0, result[3]);
+        assertTrue(Double.isNaN(of().percentile(x -> 1.0, 0.5)[0]));
+        assertThrows(IllegalArgumentException.class, () -> latencies.percentile(Integer::doubleValue, 1.5));
+    }
+
+    @Test
+    public void testPercentileBy() {
+        Map<Integer, double[]> result = getPersonEnumerable()
+                .percentileBy(Person::getAge, Person::getSalary, 0.0, 1.0)
+                .toMap(Map.Entry::getKey, Map.Entry::getValue);
+
+        assertArrayEquals(new double[]{50000.0, 55000.0}, result.get(25), 0.0);
+        assertArrayEquals(new double[]{70000.0, 70000.0}, result.get(35), 0.0);
+
+        // 通过 aggregateBy 为每个键保留独立的 TDigest
+        Map<Integer, TDigest> digests = getPersonEnumerable()
+                .aggregateBy(Person::getAge, (age, p) -> new TDigest(), (age, digest, p) -> digest.add(p.getSalary()))
+                .toMap(Map.Entry::getKey, Map.Entry::getValue);
+        assertEquals(2, digests.get(25).getCount());
+        assertEquals(50000.0, digests.get(25).quantile(0.0));
+        assertEquals(55000.0, digests.get(25).quantile(1.0));
+        assertEquals(70000.0, digests.get(35).quantile(0.5));
+    }
+
+    @Test
+    public void testTDigestMerge() {
+        TDigest left = new TDigest(100);
+        TDigest right = new TDigest(100);
+        for (int i = 0; i < 50_000; i++) {
+            left.add(i);
+            right.add(i + 50_000);
+        }
+
+        TDigest merged = TDigest.fromByteArray(left.toByteArray()).merge(right);
+        assertEquals(100_000, merged.getCount());
+        assertEquals(90_000, merged.quantile(0.9), 200);
+        assertEquals(99_999.0, merged.getMax());
+
+        merged.merge(merged);
+        assertEquals(200_000, merged.getCount());
+        assertEquals(90_000, merged.quantile(0.9), 200);
+    }
+
+    @Test
+    public void testHistogram() {
+        long[] result = getPersonEnumerable().histogram(Person::getSalary, new double[]{55000, 65000});
+
+        // 低于 55000、[55000, 65000)、不低于 65000
+        assertArrayEquals(new long[]{1, 2, 2}, result);
+        assertThrows(IllegalArgumentException.class, () ->
+                getPersonEnumerable().histogram(Person::getSalary, new double[]{2, 1}));
+    }
+
+    // ========== 测试 topFrequent 方法 ==========
+
+    @Test
+    public void testTopFrequent() {
+        // 长尾分布：key i 出现 i 次（i < 20），另有 10000 个只出现一次的 key
+        List<String> events = new ArrayList<>();
+        for (int i = 1; i < 20; i++) {
+            for (int j = 0; j < i * 100; j++) {
+                events.add("hot" + i);
+            }
+        }
+        for (int i = 0; i < 10_000; i++) {
+            events.add("cold" + i);
+        }
+        Collections.shuffle(events, new Random(42));
+
+        List<Map.Entry<String, Long>> top = of(events).topFrequent(s -> s, 3, 0.001).toList();
+
+        assertEquals(Arrays.asList("hot19", "hot18", "hot17"), of(top).select(Map.Entry::getKey).toList());
+        assertEquals(1900, top.get(0).getValue(), events.size() * 0.001);
+        assertThrows(IllegalArgumentException.class, () -> of(events).topFrequent(s -> s, 0, 0.1));
+        assertThrows(IllegalArgumentException.class, () -> of(events).topFrequent(s -> s, 3, 1.0));
+    }
+
+    @Test
+    public void testSpaceSavingMerge() {
+        SpaceSaving<String> left = new SpaceSaving<>(3);
+        SpaceSaving<String> right = new SpaceSaving<>(3);
+        for (String s : Arrays.asList("a", "a", "a", "b", "b", "c", "d")) {
+            left.add(s);
+        }
+        for (String s : Arrays.asList("b", "b", "b", "a", "e")) {
+            right.add(s);
+        }
+
+        left.merge(right);
+
+        assertEquals(12, left.getTotal());
+        assertEquals("b", left.top(1).get(0).getKey());
+        assertTrue(left.estimate("a") >= 4);
+        assertTrue(left.estimate("b") - left.error("b") <= 5);
+    }
+
+    // ========== 测试 sample 方法 ==========
+
+    @Test
+    public void testSample() {
+        Enumerable<Integer> numbers = of(IntStream.range(0, 100_000).boxed().collect(Collectors.toList()));
+
+        List<Integer> sample = numbers.sample(1000, 7).toList();
+        assertEquals(1000, sample.size());
+        assertEquals(1000, new HashSet<>(sample).size());
+        // 均匀抽样的均值应接近总体均值
+        assertEquals(50_000, of(sample).averageInt(i -> i), 3_000);
+        assertEquals(sample, numbers.sample(1000, 7).toList());
+        assertEquals(5, getIntEnumerable().sample(10).count());
+        assertEquals(0, getIntEnumerable().sample(0).count());
+        assertThrows(IllegalArgumentException.class, () -> numbers.sample(-1));
+
+        // 同一个 Enumerable 重复枚举时结果可复现
+        Enumerable<Integer> seeded = numbers.sample(3, 42L);
+        assertEquals(seeded.toList(), seeded.toList());
+        Enumerable<Integer> fraction = numbers.sampleFraction(0.01, 42L);
+        assertEquals(fraction.toList(), fraction.toList());
+        Enumerable<Integer> weighted = numbers.sampleWeighted(3, i -> 1.0, 42L);
+        assertEquals(weighted.toList(), weighted.toList());
+        assertThrows(IllegalArgumentException.class, () -> numbers.sample(-1, 42L));
+        assertThrows(IllegalArgumentException.class, () -> numbers.sampleFraction(2.0, 42L));
+        assertThrows(IllegalArgumentException.class, () -> numbers.sampleWeighted(-1, i -> 1.0, 42L));
+    }
+
+    @Test
+    public void testSampleFraction() {
+        Enumerable<Integer> numbers = of(IntStream.range(0, 100_000).boxed().collect(Collectors.toList()));
+
+        List<Integer> sample = numbers.sampleFraction(0.1, 7).toList();
+        assertEquals(10_000, sample.size(), 500);
+        assertEquals(of(sample).orderBy(i -> i).toList(), sample);
+        assertEquals(0, numbers.sampleFraction(0.0).count());
+        assertEquals(5, getIntEnumerable().sampleFraction(1.0).count());
+    }
+
+    @Test
+    public void testSampleWeighted() {
+        Enumerable<String> items = of("never", "rare", "common");
+
+        Map<String, Integer> counts = new HashMap<>();
+        Random seeds = new Random(3);
+        for (int i = 0; i < 2_000; i++) {
+            String chosen = items.sampleWeighted(1, s -> s.equals("never") ? 0.0 : s.equals("rare") ? 1.0 : 9.0, seeds.nextLong()).single();
+            counts.merge(chosen, 1, Integer::sum);
+        }
+
+        assertFalse(counts.containsKey("never"));
+        assertEquals(200, counts.get("rare"), 60);
+    }
+
+    @Test
+    public void testReservoirMerge() {
+        Random random = new Random(1);
+        int[] fromLeft = new int[1];
+        for (int round = 0; round < 200; round++) {
+            Reservoir<Integer> left = new Reservoir<>(10, random);
+            Reservoir<Integer> right = new Reservoir<>(10, random);
+            for (int i = 0; i < 3_000; i++) {
+                left.add(i);
+            }
+            for (int i = 3_000; i < 4_000; i++) {
+                right.add(i);
+            }
+            List<Integer> merged = left.merge(right).toList();
+            assertEquals(10, merged.size());
+            assertEquals(4_000, left.getSeen());
+            fromLeft[0] += of(merged).count(i -> i < 3_000);
+        }
+
+        // 左侧代表 3/4 的总体
+        assertEquals(1500, fromLeft[0], 100);
+
+        // 合并后继续添加的元素同样被均匀抽样
+        int[] late = new int[1];
+        for (int round = 0; round < 300; round++) {
+            Reservoir<Integer> left = new Reservoir<>(10, random);
+            Reservoir<Integer> right = new Reservoir<>(10, random);
+            for (int i = 0; i < 1_000; i++) {
+                left.add(i);
+                right.add(i + 1_000);
+            }
+            left.merge(right);
+            for (int i = 2_000; i < 4_000; i++) {
+                left.add(i);
+            }
+            late[0] += of(left.toList()).count(i -> i >= 2_000);
+        }
+        assertEquals(1500, late[0], 120);
+    }
+
+    // ========== 测试 window 和 scan 方法 ==========
+
+    @Test
+    public void testWindow() {
+        Enumerable<Integer> enumerable = of(1, 2, 3, 4, 5, 6, 7);
+
+        // 窗口视图会被复用，需要拷贝
+        List<List<Integer>> sliding = enumerable.window(3, 1).select(w -> (List<Integer>) new ArrayList<>(w)).toList();
+        assertEquals(Arrays.asList(
+                Arrays.asList(1, 2, 3), Arrays.asList(2, 3, 4), Arrays.asList(3, 4, 5),
+                Arrays.asList(4, 5, 6), Arrays.asList(5, 6, 7)), sliding);
+
+        List<String> hopping = enumerable.window(2, 3).select(Object::toString).toList();
+        assertEquals(Arrays.asList("[1, 2]", "[4, 5]"), hopping);
+
+        assertThrows(IllegalArgumentException.class, () -> enumerable.window(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> enumerable.window(1, 0));
+    }
+
+    @Test
+    public void testScan() {
+        Enumerable<Integer> result = getIntEnumerable().scan(10, Integer::sum);
+
+        assertEquals(Arrays.asList(11, 13, 16, 20, 25), result.toList());
+        assertEquals(0, of().scan(0, (a, b) -> a).count());
+    }
+
+    @Test
+    public void testMovingAggregates() {
+        Enumerable<Integer> enumerable = of(4, 2, 12, 3, 8, 1, 5);
+
+        assertEquals(Arrays.asList(18.0, 17.0, 23.0, 12.0, 14.0), enumerable.movingSum(3, Integer::doubleValue).toList());
+        assertEquals(Arrays.asList(3.0, 7.0, 7.5, 5.5, 4.5, 3.0), enumerable.movingAverage(2, Integer::doubleValue).toList());
+        assertEquals(Arrays.asList(2.0, 2.0, 3.0, 1.0, 1.0), enumerable.movingMin(3, Integer::doubleValue).toList());
+        assertEquals(Arrays.asList(12.0, 12.0, 12.0, 8.0, 8.0), enumerable.movingMax(3, Integer::doubleValue).toList());
+        assertEquals(0, enumerable.movingMax(8, Integer::doubleValue).count());
+    }
+
+    @Test
+    public void testMovingSumLargeWindow() {
+        Enumerable<Integer> enumerable = of(IntStream.range(0, 10_000).boxed().collect(Collectors.toList()));
+
+        List<Double> sums = enumerable.movingSum(1_000, i -> 0.1).toList();
+        assertEquals(9_001, sums.size());
+        assertEquals(100.0, sums.get(sums.size() - 1), 1e-9);
+    }
+
+    // ========== 测试 windowByTime 和 sessionWindows 方法 ==========
+
+    @Test
+    public void testWindowByTime() {
+        Enumerable<Long> events = of(1L, 3L, 9L, 10L, 12L, 25L, 27L);
+
+        List<TimeWindow<List<Long>>> windows = events.windowByTime(t -> t, 10).toList();
+
+        assertEquals(Arrays.asList(
+                new TimeWindow<>(0, 10, Arrays.asList(1L, 3L, 9L)),
+                new TimeWindow<>(10, 20, Arrays.asList(10L, 12L)),
+                new TimeWindow<>(20, 30, Arrays.asList(25L, 27L))), windows);
+    }
+
+    @Test
+    public void testWindowByTimeEmitsBeforeEndOfInput() {
+        // 无界输入：窗口在水位线越过其结束时间后立即输出
+        Iterator<TimeWindow<Long>> iterator = of(Stream.iterate(0L, t -> t + 1))
+                .windowByTime(t -> t, 100, 5, () -> 0L, (count, t) -> count + 1)
+                .iterator();
+
+        assertEquals(new TimeWindow<>(0, 100, 100L), iterator.next());
+        assertEquals(new TimeWindow<>(100, 200, 100L), iterator.next());
+    }
+
+    @Test
+    public void testWindowByTimeAllowedLateness() {
+        Enumerable<Long> events = of(1L, 11L, 8L, 14L, 21L, 5L, 23L);
+
+        List<TimeWindow<Long>> windows = events.windowByTime(t -> t, 10, 5, () -> 0L, (count, t) -> count + 1).toList();
+
+        // 8 在容忍范围内被计入，5 到达时窗口已关闭而被丢弃
+        assertEquals(Arrays.asList(
+                new TimeWindow<>(0, 10, 2L),
+                new TimeWindow<>(10, 20, 2L),
+                new TimeWindow<>(20, 30, 2L)), windows);
+        assertThrows(IllegalArgumentException.class, () -> events.windowByTime(t -> t, 0));
+    }
+
+    @Test
+    public void testSessionWindows() {
+        Enumerable<Long> events = of(1L, 2L, 4L, 20L, 22L, 40L);
+
+        List<TimeWindow<List<Long>>> sessions = events.sessionWindows(t -> t, 5).toList();
+
+        assertEquals(Arrays.asList(
+                new TimeWindow<>(1, 9, Arrays.asList(1L, 2L, 4L)),
+                new TimeWindow<>(20, 27, Arrays.asList(20L, 22L)),
+                new TimeWindow<>(40, 45, List.of(40L))), sessions);
+    }
+
+    @Test
+    public void testSessionWindowsMergeOnLateElement() {
+        Enumerable<Long> events = of(1L, 9L, 5L, 30L);
+
+        List<TimeWindow<Long>> sessions = events
+                .sessionWindows(t -> t, 5, 10, () -> 0L, (sum, t) -> sum + t, Long::sum)
+                .toList();
+
+        // 5 连接了 [1] 和 [9] 两个会话
+        assertEquals(Arrays.asList(new TimeWindow<>(1, 14, 15L), new TimeWindow<>(30, 35, 30L)), sessions);
+    }
+
+    @Test
+    public void testSessionWindowsLateElementInOpenSession() {
+        Enumerable<Long> events = of(0L, 8L, 16L, 24L, 3L, -20L);
+
+        List<TimeWindow<Long>> sessions = events
+                .sessionWindows(t -> t, 10, 0, () -> 0L, (sum, t) -> sum + t, Long::sum)
+                .toList();
+
+        // 水位线为 24 时会话 [0, 34) 仍未关闭，迟到的 3 应并入其中；-20 已无会话可并入，被丢弃
+        assertEquals(List.of(new TimeWindow<>(0, 34, 51L)), sessions);
+    }
+
+    // ========== 测试 symmetricJoin 方法 ==========
+
+    @Test
+    public void testSymmetricJoin() {
+        Enumerable<Person> persons = getPersonEnumerable();
+        List<Department> departments = Arrays.asList(
+                new Department("Junior", 25),
+                new Department("Senior", 30),
+                new Department("Nobody", 40)
+        );
+
+        List<String> result = persons.symmetricJoin(departments, Person::getAge, d -> d.requiredAge, 100,
+                (p, d) -> p.getName() + ":" + d.name).toList();
+
+        List<String> expected = persons.join(departments, Person::getAge, d -> d.requiredAge,
+                (p, d) -> p.getName() + ":" + d.name).toList();
+        assertEquals(new HashSet<>(expected), new HashSet<>(result));
+        assertEquals(expected.size(), result.size());
+    }
+
+    @Test
+    public void testSymmetricJoinUnbounded() {
+        // 两侧都是无界流，结果随到随出
+        Enumerable<Long> left = of(Stream.iterate(0L, i -> i + 1));
+        Iterable<Long> right = of(Stream.iterate(0L, i -> i + 2));
+
+        List<Long> result = left.symmetricJoin(right, i -> i, i -> i, 10, (a, b) -> a).take(5).toList();
+
+        assertEquals(Arrays.asList(0L, 2L, 4L, 6L, 8L), result);
+    }
+
+    @Test
+    public void testSymmetricJoinRetention() {
+        Enumerable<Integer> left = of(1, 1, 1, 1);
+        List<Integer> right = Arrays.asList(2, 2, 2, 1);
+
+        // 只保留最近 1 个元素：右侧的 1 只能匹配左侧保留下来的最后一个 1
+        assertEquals(1, left.symmetricJoin(right, i -> i, i -> i, 1, (a, b) -> a).count());
+        assertEquals(4, left.symmetricJoin(right, i -> i, i -> i, 4, (a, b) -> a).count());
+        assertThrows(IllegalArgumentException.class, () -> left.symmetricJoin(right, i -> i, i -> i, 0, (a, b) -> a));
+    }
+
+    @Test
+    public void testSymmetricJoinTimeWindow() {
+        // 元素为 {key, timestamp}
+        Enumerable<long[]> clicks = of(new long[]{1, 0}, new long[]{2, 10}, new long[]{1, 50});
+        List<long[]> views = Arrays.asList(new long[]{1, 3}, new long[]{2, 40}, new long[]{1, 55});
+
+        List<String> result = clicks.symmetricJoin(views, c -> c[0], v -> v[0], c -> c[1], v -> v[1], 5,
+                (c, v) -> c[1] + "-" + v[1]).toList();
+
+        assertEquals(Arrays.asList("0-3", "50-55"), result);
+    }
+
+    // ========== 测试 prefetch 方法 ==========
+
+    @Test
+    public void testPrefetch() {
+        List<Integer> result = of(IntStream.range(0, 1000).boxed()).prefetch(16).select(i -> i * 2).toList();
+
+        assertEquals(1000, result.size());
+        assertEquals(0, result.get(0));
+        assertEquals(1998, result.get(999));
+        assertEquals(Arrays.asList(1, null, 3), of(1, null, 3).prefetch(1).toList());
+        assertThrows(IllegalArgumentException.class, () -> of(1).prefetch(0));
+    }
+
+    @Test
+    public void testPrefetchException() {
+        Enumerable<Integer> source = of(1, 2, 0, 4).select(i -> 4 / i).prefetch(2);
+
+        Iterator<Integer> iterator = source.iterator();
+        assertEquals(4, iterator.next());
+        assertEquals(2, iterator.next());
+        assertThrows(ArithmeticException.class, iterator::hasNext);
+    }
+
+    @Test
+    public void testPrefetchEarlyStop() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Enumerable<Long> source = of(Stream.iterate(0L, i -> i + 1)).prefetch(4, executor);
+
+        Iterator<Long> iterator = source.iterator();
+        assertEquals(0L, iterator.next());
+        ((AutoCloseable) iterator).close();
+
+        // 关闭后生产者退出，执行器可以正常终止
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    // ========== 测试 selectConcurrent 方法 ==========
+
+    @Test
+    public void testSelectConcurrent() {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+
+        List<Integer> result = of(IntStream.range(0, 40).boxed()).selectConcurrent(4, i -> {
+            peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                // 越靠前的元素越慢，顺序版本仍按源顺序输出
+                Thread.sleep(40 - i);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            running.decrementAndGet();
+            return i * 10;
+        }).toList();
+
+        assertEquals(of(IntStream.range(0, 40).boxed()).select(i -> i * 10).toList(), result);
+        assertTrue(peak.get() <= 4);
+        assertTrue(peak.get() > 1);
+        assertThrows(IllegalArgumentException.class, () -> of(1).selectConcurrent(0, i -> i));
+    }
+
+    @Test
+    public void testSelectConcurrentUnordered() {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<Integer> result = of(3, 1, 2).selectConcurrentUnordered(3, executor, i -> {
+                try {
+                    Thread.sleep(i * 30L);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                return i;
+            }).toList();
+
+            assertEquals(new HashSet<>(Arrays.asList(1, 2, 3)), new HashSet<>(result));
+            assertEquals(3, result.size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testSelectConcurrentException() {
+        Enumerable<Integer> ordered = of(1, 0, 2).selectConcurrent(2, i -> 2 / i);
+        Enumerable<Integer> unordered = of(1, 0, 2).selectConcurrentUnordered(2, i -> 2 / i);
+
+        assertThrows(ArithmeticException.class, ordered::toList);
+        assertThrows(ArithmeticException.class, unordered::toList);
+    }
+
+    // ========== 测试 Flow.Publisher 互操作 ==========
+
+    @Test
+    public void testOfPublisher() throws Exception {
+        SubmissionPublisher<Integer> publisher = new SubmissionPublisher<>();
+        Iterator<Integer> iterator = of(publisher, 4).iterator();
+
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < 100; i++) {
+                publisher.submit(i);
+            }
+            publisher.close();
+        });
+        producer.start();
+
+        List<Integer> result = new ArrayList<>();
+        iterator.forEachRemaining(result::add);
+        producer.join();
+
+        assertEquals(of(IntStream.range(0, 100).boxed()).toList(), result);
+        assertThrows(IllegalArgumentException.class, () -> of(publisher, 0));
+    }
+
+    @Test
+    public void testOfPublisherError() {
+        Flow.Publisher<Integer> publisher = of(1, 0).select(i -> 2 / i).toPublisher();
+        Iterator<Integer> iterator = of(publisher, 2).iterator();
+
+        assertEquals(2, iterator.next());
+        assertThrows(ArithmeticException.class, iterator::hasNext);
+    }
+
+    @Test
+    public void testToPublisher() {
+        Flow.Publisher<Integer> publisher = of(of(IntStream.range(0, 50).boxed()).toList()).toPublisher();
+
+        assertEquals(of(IntStream.range(0, 50).boxed()).toList(), of(publisher, 3).toList());
+
+        // 无界源只按需求拉取
+        Flow.Publisher<Long> infinite = of(Stream.iterate(0L, i -> i + 1)).toPublisher();
+        assertEquals(Arrays.asList(0L, 1L, 2L), of(infinite, 2).take(3).toList());
+    }
+
+    @Test
+    public void testToPublisherDemand() throws Exception {
+        List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(1);
+
+        of(1, 2, 3, 4, 5).toPublisher().subscribe(new Flow.Subscriber<Integer>() {
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(2);
+            }
+
+            @Override
+            public void onNext(Integer item) {
+                received.add(item);
+                if (received.size() == 2) {
+                    subscription.cancel();
+                    done.countDown();
+                }
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        assertEquals(Arrays.asList(1, 2), received);
+    }
+
+    // ========== 测试 buffer 方法 ==========
+
+    @Test
+    public void testBuffer() {
+        List<List<Integer>> result = of(1, 2, 3, 4, 5).buffer(2, Duration.ofSeconds(10)).toList();
+
+        assertEquals(Arrays.asList(Arrays.asList(1, 2), Arrays.asList(3, 4), Collections.singletonList(5)), result);
+        assertTrue(of().buffer(3, Duration.ofSeconds(1)).toList().isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> of(1).buffer(0, Duration.ofSeconds(1)));
+        assertThrows(IllegalArgumentException.class, () -> of(1).buffer(1, Duration.ofSeconds(-1)));
+    }
+
+    @Test
+    public void testBufferDelay() {
+        // 慢速源：每个元素间隔 100ms，批次在 20ms 后即被提前发出
+        Enumerable<Integer> slow = of(1, 2, 3).select(i -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return i;
+        });
+
+        List<List<Integer>> result = slow.buffer(100, Duration.ofMillis(20)).toList();
+
+        assertEquals(Arrays.asList(Collections.singletonList(1), Collections.singletonList(2),
+                Collections.singletonList(3)), result);
+    }
+
+    @Test
+    public void testBufferReuse() {
+        List<Integer> sizes = new ArrayList<>();
+        List<Integer> sums = new ArrayList<>();
+        Set<List<Integer>> identities = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        for (List<Integer> batch : of(IntStream.range(0, 10).boxed()).buffer(4, Duration.ofSeconds(10), true)) {
+            identities.add(batch);
+            sizes.add(batch.size());
+            sums.add(of(batch).sumInt(i -> i));
+        }
+
+        assertEquals(Arrays.asList(4, 4, 2), sizes);
+        assertEquals(Arrays.asList(6, 22, 17), sums);
+        assertEquals(1, identities.size());
+    }
+
+    // ========== 测试 AsyncEnumerable ==========
+
+    // 模拟远程分页查询：每页 3 个元素，异步返回
+    private static CompletableFuture<List<Integer>> fetchPage(int page, AtomicInteger fetches) {
+        fetches.incrementAndGet();
+        return CompletableFuture.supplyAsync(() -> Arrays.asList(page * 3, page * 3 + 1, page * 3 + 2));
+    }
+
+    @Test
+    public void testAsyncEnumerable() throws Exception {
+        AtomicInteger fetches = new AtomicInteger();
+        AsyncEnumerable<Integer> items = of(0, 1, 2, 3).toAsyncEnumerable()
+                .selectAwait(page -> fetchPage(page, fetches))
+                .selectMany(page -> page);
+
+        assertEquals(Arrays.asList(0, 4, 8), items.where(i -> i % 2 == 0).select(i -> i * 2).take(3).toListAsync().get());
+        assertEquals(66, items.aggregate(0, Integer::sum).get());
+        assertEquals(0, items.firstAsync().get());
+        assertEquals(of(IntStream.range(0, 12).boxed()).toList(), items.toEnumerable().toList());
+    }
+
+    @Test
+    public void testAsyncEnumerableTakeStopsFetching() throws Exception {
+        AtomicInteger fetches = new AtomicInteger();
+        AsyncEnumerable<Integer> items = of(IntStream.range(0, 100).boxed()).toAsyncEnumerable()
+                .selectAwait(page -> fetchPage(page, fetches))
+                .selectMany(page -> page);
+
+        assertEquals(Arrays.asList(0, 1, 2, 3), items.take(4).toListAsync().get());
+        assertEquals(2, fetches.get());
+    }
+
+    @Test
+    public void testAsyncEnumerableErrors() {
+        ExecutionException empty = assertThrows(ExecutionException.class,
+                () -> of().toAsyncEnumerable().firstAsync().get());
+        assertTrue(empty.getCause() instanceof NoSuchElementException);
+
+        AsyncEnumerable<Integer> failing = of(1, 0).toAsyncEnumerable()
+                .selectAwait(i -> CompletableFuture.supplyAsync(() -> 1 / i));
+        ExecutionException error = assertThrows(ExecutionException.class, () -> failing.toListAsync().get());
+        assertTrue(error.getCause() instanceof ArithmeticException);
+        assertThrows(ArithmeticException.class, () -> failing.toEnumerable().toList());
+    }
+
+    @Test
+    public void testAsyncEnumerableLongSynchronousRun() throws Exception {
+        // 大量同步完成的元素不能导致栈溢出
+        AsyncEnumerable<Integer> items = of(IntStream.range(0, 200_000).boxed()).toAsyncEnumerable()
+                .where(i -> i % 100_000 == 99_999);
+
+        assertEquals(Arrays.asList(99_999, 199_999), items.toListAsync().get());
+    }
+
+    // ========== 测试 Java 原生函数式接口重载 ==========
+
+    @Test
+    public void testFilter() {
+        java.util.function.Predicate<Integer> even = i -> i % 2 == 0;
+
+        assertEquals(Arrays.asList(2, 4), of(1, 2, 3, 4, 5).filter(even).toList());
+        assertEquals(Arrays.asList(1, 3), of(1, 2, 3, 4).filterIndexed((e, i) -> i % 2 == 0).toList());
+        assertEquals(Arrays.asList("0:a", "1:b"), of("a", "b").selectIndexed((e, i) -> i + ":" + e).toList());
+    }
+
+    @Test
+    public void testPrimitiveSelectors() {
+        Enumerable<Person> persons = getPersonEnumerable();
+
+        assertEquals(persons.sumInt(Person::getAge), persons.sumOfInt(Person::getAge));
+        assertEquals(persons.sumLong(p -> (long) p.getAge()), persons.sumOfLong(p -> (long) p.getAge()));
+        assertEquals(persons.sumDouble(p -> (double) p.getAge()), persons.sumOfDouble(p -> (double) p.getAge()), 1e-9);
+        assertEquals(persons.averageInt(Person::getAge), persons.averageOfInt(Person::getAge), 1e-9);
+        assertEquals(persons.averageLong(p -> (long) p.getAge()), persons.averageOfLong(p -> (long) p.getAge()), 1e-9);
+        assertEquals(2.5, of(1.0, 4.0).averageOfDouble(d -> d), 1e-9);
+        assertTrue(Double.isNaN(of().averageOfInt(o -> 1)));
+    }
+
+    @Test
+    public void testReduce() {
+        assertEquals(10, of(1, 2, 3, 4).reduce(Integer::sum));
+        assertEquals(20, of(1, 2, 3, 4).reduce(10, Integer::sum));
+        assertEquals(10, Linq.<Integer>of().reduce(10, Integer::sum));
+        assertThrows(UnsupportedOperationException.class, () -> Linq.<Integer>of().reduce(Integer::sum));
+    }
+
+    // ========== 测试基本类型数组聚合 ==========
+
+    @Test
+    public void testOfInts() {
+        int[] values = IntStream.range(-50, 53).map(i -> i * 7 % 101).toArray();
+        IntEnumerable ints = ofInts(values);
+
+        assertEquals(IntStream.of(values).asLongStream().sum(), ints.sum());
+        assertEquals(IntStream.of(values).min().getAsInt(), ints.min());
+        assertEquals(IntStream.of(values).max().getAsInt(), ints.max());
+        assertEquals(IntStream.of(values).average().getAsDouble(), ints.average(), 1e-9);
+        assertEquals(IntStream.of(values).filter(i -> i > 10).count(), ints.count(i -> i > 10));
+        assertEquals(IntStream.of(values).filter(i -> i >= -5 && i <= 20).count(), ints.countBetween(-5, 20));
+        assertEquals(0, ints.countBetween(5, -5));
+        assertEquals(2, ofInts(Integer.MIN_VALUE, 0, Integer.MAX_VALUE).countBetween(Integer.MIN_VALUE, 0));
+        assertArrayEquals(IntStream.of(values).filter(i -> i % 2 == 0).toArray(), ints.where(i -> i % 2 == 0).toArray());
+        assertEquals(4_294_967_294L, ofInts(Integer.MAX_VALUE, Integer.MAX_VALUE).sum());
+        assertThrows(NoSuchElementException.class, () -> ofInts().min());
+        assertTrue(Double.isNaN(ofInts().average()));
+        assertEquals(Arrays.asList(1, 2, 3), ofInts(1, 2, 3).asEnumerable().toList());
+    }
+
+    @Test
+    public void testOfLongsAndDoubles() {
+        long[] longs = {5, -3, 9, 1, 7, 2};
+        double[] doubles = {0.5, -1.5, 2.25, 8.0, -0.75};
+
+        assertEquals(21, ofLongs(longs).sum());
+        assertEquals(-3, ofLongs(longs).min());
+        assertEquals(9, ofLongs(longs).max());
+        assertEquals(3.5, ofLongs(longs).average(), 1e-9);
+        assertEquals(3, ofLongs(longs).count(l -> l > 2));
+        assertArrayEquals(new long[]{9, 7}, ofLongs(longs).where(l -> l > 5).toArray());
+        assertEquals(8.5, ofDoubles(doubles).sum(), 1e-9);
+        assertEquals(-1.5, ofDoubles(doubles).min(), 0);
+        assertEquals(8.0, ofDoubles(doubles).max(), 0);
+        assertEquals(1.7, ofDoubles(doubles).average(), 1e-9);
+        assertEquals(2, ofDoubles(doubles).count(d -> d < 0));
+    }
+
+    @Test
+    public void testPrimitiveAggregatesOverManyRegisters() {
+        // 长度不是寄存器宽度的整数倍，覆盖向量循环和尾部
+        long[] longs = LongStream.range(-500, 501).map(l -> l * 1_000_003L % 9_999_991L).toArray();
+        double[] doubles = LongStream.of(longs).mapToDouble(l -> l / 8.0).toArray();
+
+        assertEquals(LongStream.of(longs).sum(), ofLongs(longs).sum());
+        assertEquals(LongStream.of(longs).min().getAsLong(), ofLongs(longs).min());
+        assertEquals(LongStream.of(longs).max().getAsLong(), ofLongs(longs).max());
+        assertEquals(LongStream.of(longs).average().getAsDouble(), ofLongs(longs).average(), 1e-6);
+        assertEquals(DoubleStream.of(doubles).sum(), ofDoubles(doubles).sum(), 1e-6);
+        assertEquals(DoubleStream.of(doubles).min().getAsDouble(), ofDoubles(doubles).min(), 0);
+        assertEquals(DoubleStream.of(doubles).max().getAsDouble(), ofDoubles(doubles).max(), 0);
+
+        // NaN 和有符号零与 Math.min/Math.max 一致
+        double[] withNaN = Arrays.copyOf(doubles, doubles.length + 1);
+        withNaN[doubles.length / 2] = Double.NaN;
+        assertTrue(Double.isNaN(ofDoubles(withNaN).min()));
+        assertTrue(Double.isNaN(ofDoubles(withNaN).max()));
+        double[] zeros = new double[37];
+        zeros[20] = -0.0;
+        assertEquals(0, Double.compare(-0.0, ofDoubles(zeros).min()));
+        assertEquals(0, Double.compare(0.0, ofDoubles(zeros).max()));
+    }
+
+    // ========== 测试补偿求和 ==========
+
+    @Test
+    public void testSumDoubleCompensated() {
+        // 1 + 1e-16 * 10^6：朴素求和会丢失全部小量
+        List<Double> values = new ArrayList<>();
+        values.add(1.0);
+        for (int i = 0; i < 1_000_000; i++) {
+            values.add(1e-16);
+        }
+        Enumerable<Double> enumerable = of(values);
+
+        assertEquals(1.0, enumerable.sumDouble(d -> d), 0);
+        assertEquals(1.0000000001, enumerable.sumDoubleCompensated(d -> d), 1e-15);
+        assertEquals(1.0000000001 / 1_000_001, enumerable.averageDoubleCompensated(d -> d), 1e-20);
+        assertEquals(0.0, of(1e100, 1.0, -1e100).sumDoubleCompensated(d -> d) - 1.0, 0);
+        assertEquals(Double.POSITIVE_INFINITY, of(1.0, Double.POSITIVE_INFINITY).sumDoubleCompensated(d -> d), 0);
+        assertTrue(Double.isNaN(of().averageDoubleCompensated(o -> 1.0)));
+    }
+
+    @Test
+    public void testCompensatedSumMerge() {
+        CompensatedSum left = new CompensatedSum();
+        CompensatedSum right = new CompensatedSum();
+        CompensatedSum all = new CompensatedSum();
+        Random random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            double value = random.nextDouble() * Math.pow(10, random.nextInt(20) - 10);
+            (i % 2 == 0 ? left : right).add(value);
+            all.add(value);
+        }
+
+        double merged = new CompensatedSum().merge(left).merge(right).sum();
+        assertEquals(all.sum(), merged, Math.ulp(all.sum()));
+        assertEquals(merged, new CompensatedSum().merge(left).merge(right).sum(), 0);
+        assertEquals(10_000, left.merge(right).getCount());
+    }
+
+    @Test
+    public void testSumFloatAccumulatesInDouble() {
+        List<Float> values = new ArrayList<>();
+        for (int i = 0; i < 1_000_000; i++) {
+            values.add(0.1f);
+        }
+
+        assertEquals(100_000f, of(values).sumFloat(f -> f), 1f);
+    }
+
+    // ========== 测试定点小数累加 ==========
+
+    @Test
+    public void testSumBigDecimalFixedScale() {
+        Enumerable<BigDecimal> amounts = of(new BigDecimal("10.25"), new BigDecimal("3.5"), new BigDecimal("-1"),
+                new BigDecimal("0.05"));
+
+        assertEquals(new BigDecimal("12.80"), amounts.sumBigDecimal(a -> a, 2));
+        assertEquals(new BigDecimal("3.2"), amounts.averageBigDecimal(a -> a, 2, new MathContext(2)));
+        assertThrows(ArithmeticException.class, () -> of(new BigDecimal("0.001")).sumBigDecimal(a -> a, 2));
+        assertThrows(ArithmeticException.class, () -> Linq.<BigDecimal>of().averageBigDecimal(a -> a, 2, MathContext.DECIMAL64));
+    }
+
+    @Test
+    public void testAverageBigDecimalMathContext() {
+        Enumerable<BigDecimal> values = of(BigDecimal.ONE, BigDecimal.ZERO, BigDecimal.ZERO);
+
+        // 不带 MathContext 时商保留被除数的标度，结果被舍入为 0
+        assertEquals(BigDecimal.ZERO, values.averageBigDecimal(v -> v));
+        assertEquals(new BigDecimal("0.3333"), values.averageBigDecimal(v -> v, new MathContext(4)));
+    }
+
+    @Test
+    public void testDecimalSumOverflow() {
+        DecimalSum sum = new DecimalSum(2);
+        for (int i = 0; i < 4; i++) {
+            sum.addUnscaled(Long.MAX_VALUE);
+        }
+        sum.add(new BigDecimal("12345678901234567890.12"));
+
+        BigInteger expected = BigInteger.valueOf(Long.MAX_VALUE).multiply(BigInteger.valueOf(4))
+                .add(new BigInteger("1234567890123456789012"));
+        assertEquals(new BigDecimal(expected, 2), sum.sum());
+        assertEquals(5, sum.getCount());
+
+        DecimalSum other = new DecimalSum(2).addUnscaled(-5);
+        assertEquals(new BigDecimal(expected.subtract(BigInteger.valueOf(5)), 2), sum.merge(other).sum());
+        assertEquals(6, sum.getCount());
+        assertThrows(IllegalArgumentException.class, () -> sum.merge(new DecimalSum(3)));
+    }
+
+    // ========== 测试 Table 列式内存表 ==========
+
+    private Table getPersonTable() {
+        Schema<Person> schema = new Schema<Person>()
+                .stringColumn("name", Person::getName)
+                .intColumn("age", Person::getAge)
+                .doubleColumn("salary", Person::getSalary);
+        return getPersonEnumerable().toTable(schema);
+    }
+
+    @Test
+    public void testTable() {
+        Table table = getPersonTable();
+
+        assertEquals(Arrays.asList("name", "age", "salary"), table.getColumns());
+        assertEquals(5, table.getRowCount());
+
+        Table filtered = table.whereInt("age", a -> a >= 30).whereDouble("salary", s -> s < 70000);
+        assertEquals(Arrays.asList("Bob", "Eve"), filtered.select(r -> r.getString("name")).toList());
+        assertEquals(Arrays.asList("Charlie"), table.whereString("name", n -> n.startsWith("C"))
+                .select("name").select(r -> r.getString(0)).toList());
+        assertEquals(2, table.where(r -> r.getDouble("salary") > 60000).getRowCount());
+        assertThrows(IllegalArgumentException.class, () -> table.whereInt("name", a -> true));
+        assertThrows(NoSuchElementException.class, () -> table.select("missing"));
+    }
+
+    @Test
+    public void testTableBuilder() {
+        TableBuilder<String> builder = table(new Schema<String>()
+                .stringColumn("value", s -> s)
+                .intColumn("length", s -> s == null ? 0 : s.length()));
+        for (int i = 0; i < 100; i++) {
+            builder.add(i % 3 == 0 ? null : "v" + (i % 5));
+        }
+        Table table = builder.build();
+        builder.add("later");
+
+        assertEquals(100, table.getRowCount());
+        assertEquals(34, table.whereString("value", v -> v == null).getRowCount());
+        assertEquals(0, table.whereString("value", "later"::equals).getRowCount());
+    }
+
+    @Test
+    public void testTableAggregateBy() {
+        Table table = getPersonTable();
+
+        List<String> counts = table.aggregateBy("age", 0, (count, row) -> count + 1)
+                .select(e -> e.getKey() + "=" + e.getValue()).toList();
+        assertEquals(Arrays.asList("25=2", "30=2", "35=1"), counts);
+
+        Map<Object, Double> sums = table.sumBy("age", "salary").toMap(Map.Entry::getKey, Map.Entry::getValue);
+        assertEquals(105000.0, sums.get(25L), 1e-9);
+        assertEquals(125000.0, sums.get(30L), 1e-9);
+        assertThrows(IllegalArgumentException.class, () -> table.sumBy("age", "name"));
+    }
+
+    @Test
+    public void testTableJoin() {
+        Table persons = getPersonTable();
+        Table departments = of(new Department("Junior", 25), new Department("Senior", 30), new Department("Lead", 30))
+                .toTable(new Schema<Department>()
+                        .stringColumn("name", d -> d.name)
+                        .longColumn("age", d -> (long) d.requiredAge));
+
+        List<String> joined = persons.join(departments, "age", "age",
+                (p, d) -> p.getString("name") + ":" + d.getString("name")).toList();
+        assertEquals(Arrays.asList("Alice:Junior", "Bob:Senior", "Bob:Lead", "Charlie:Junior", "Eve:Senior", "Eve:Lead"),
+                joined);
+
+        Table nicknames = of("Bob", "Eve", "Zed").toTable(new Schema<String>().stringColumn("name", s -> s));
+        assertEquals(Arrays.asList("Bob", "Eve"),
+                persons.join(nicknames, "name", "name", (p, n) -> n.getString(0)).toList());
+        assertThrows(IllegalArgumentException.class, () -> persons.join(nicknames, "age", "name", (p, n) -> p));
+
+        // 整数列不能与浮点列连接，否则会因键类型不同而静默地得到空结果
+        Table ids = of(1, 2).toTable(new Schema<Integer>().intColumn("id", i -> i));
+        Table ratios = of(1.0, 2.0).toTable(new Schema<Double>().doubleColumn("id", d -> d));
+        assertThrows(IllegalArgumentException.class, () -> ids.join(ratios, "id", "id", (a, b) -> a));
+        assertEquals(2, ratios.join(ratios, "id", "id", (a, b) -> a.getDouble(0)).count());
+    }
+
+    // ========== 测试 dictionaryEncode 方法 ==========
+
+    @Test
+    public void testDictionaryEncode() {
+        Enumerable<Person> persons = getPersonEnumerable();
+        DictionaryEncoded<Person, Integer> encoded = persons.dictionaryEncode(Person::getAge);
+
+        assertEquals(5, encoded.getSize());
+        assertEquals(3, encoded.getCardinality());
+        assertEquals(Arrays.asList(25, 30, 35), encoded.keys());
+        assertArrayEquals(new int[]{0, 1, 0, 2, 1}, encoded.codes());
+        assertEquals(persons.countBy(Person::getAge).toList(), encoded.countBy().toList());
+        assertEquals(Arrays.asList("25=105000.0", "30=125000.0", "35=70000.0"),
+                encoded.aggregateBy(0.0, (sum, p) -> sum + p.getSalary()).select(e -> e.getKey() + "=" + e.getValue()).toList());
+        assertEquals(Arrays.asList("Alice", "Bob", "David"), encoded.distinct().select(Person::getName).toList());
+        assertEquals(Arrays.asList("25:Alice,Charlie", "30:Bob,Eve", "35:David"), encoded.groupBy()
+                .select(g -> g.getKey() + ":" + String.join(",", g.getElements().select(Person::getName))).toList());
+    }
+
+    @Test
+    public void testDictionaryEncodeJoin() {
+        DictionaryEncoded<Person, Integer> encoded = getPersonEnumerable().dictionaryEncode(Person::getAge);
+        List<Department> departments = Arrays.asList(
+                new Department("Junior", 25), new Department("Senior", 30), new Department("Nobody", 40));
+
+        List<String> result = encoded.join(departments, d -> d.requiredAge, (p, d) -> p.getName() + ":" + d.name).toList();
+
+        assertEquals(getPersonEnumerable().join(departments, Person::getAge, d -> d.requiredAge,
+                (p, d) -> p.getName() + ":" + d.name).toList(), result);
+
+        DictionaryEncoded<String, String> withNulls = of("a", null, "b", null).dictionaryEncode(s -> s);
+        assertEquals(2, withNulls.countBy().toMap(Map.Entry::getKey, Map.Entry::getValue).get(null));
+    }
+
+    // ========== 测试 IndexedCollection 哈希索引 ==========
+
+    @Test
+    public void testIndexedCollection() {
+        IndexedCollection<Person> persons = getPersonEnumerable().toIndexedCollection();
+        HashIndex<Person, Integer> byAge = persons.withIndex(Person::getAge);
+
+        assertEquals(3, byAge.getKeyCount());
+        assertEquals(Arrays.asList("Bob", "Eve"), persons.where(byAge, 30).select(Person::getName).toList());
+        assertTrue(persons.where(byAge, 99).toList().isEmpty());
+
+        // 索引随增删维护，查询结果在迭代时求值
+        Enumerable<Person> thirty = persons.where(byAge, 30);
+        Person frank = new Person("Frank", 30, 1.0);
+        persons.add(frank);
+        assertEquals(Arrays.asList("Bob", "Eve", "Frank"), thirty.select(Person::getName).toList());
+        assertTrue(persons.remove(frank));
+        assertFalse(persons.remove(frank));
+        assertEquals(2, thirty.count());
+        assertEquals(5, persons.getSize());
+
+        IndexedCollection<Person> other = new IndexedCollection<>();
+        assertThrows(IllegalArgumentException.class, () -> other.where(byAge, 30));
+    }
+
+    @Test
+    public void testIndexedCollectionDuplicates() {
+        IndexedCollection<String> words = of("a", "bb", "a", "cc").toIndexedCollection();
+        HashIndex<String, Integer> byLength = words.withIndex(String::length);
+
+        assertEquals(4, words.getSize());
+        assertEquals(Arrays.asList("a", "a", "bb", "cc"), words.asEnumerable().toList());
+        assertEquals(Arrays.asList("a", "a"), byLength.get(1).toList());
+        words.remove("a");
+        assertEquals(Collections.singletonList("a"), byLength.get(1).toList());
+        assertTrue(words.contains("a"));
+
+        // 相等但不同的实例：集合与索引返回同一个对象
+        String first = new String("x");
+        String second = new String("x");
+        words.add(first).add(second);
+        HashIndex<String, String> byValue = words.withIndex(w -> w);
+        assertSame(first, words.asEnumerable().last());
+        assertSame(first, byValue.get("x").first());
+        assertSame(first, byLength.get(1).last());
+
+        // 迭代索引结果时修改集合不会抛出 ConcurrentModificationException
+        for (String word : byLength.get(1)) {
+            words.remove(word);
+        }
+        assertEquals(0, byLength.get(1).count());
+        assertEquals(Arrays.asList("bb", "cc"), words.asEnumerable().toList());
+    }
+
+    @Test
+    public void testIndexedJoin() {
+        IndexedCollection<Person> persons = getPersonEnumerable().toIndexedCollection();
+        HashIndex<Person, Integer> byAge = persons.withIndex(Person::getAge);
+        List<Department> departments = Arrays.asList(
+                new Department("Junior", 25), new Department("Senior", 30), new Department("Nobody", 40));
+
+        List<String> result = of(departments).join(byAge, d -> d.requiredAge, (d, p) -> d.name + ":" + p.getName()).toList();
+
+        assertEquals(Arrays.asList("Junior:Alice", "Junior:Charlie", "Senior:Bob", "Senior:Eve"), result);
+    }
+
+    // ========== 测试 SortedIndex 有序索引 ==========
+
+    @Test
+    public void testSortedIndex() {
+        IndexedCollection<Person> persons = getPersonEnumerable().toIndexedCollection();
+        SortedIndex<Person, Double> bySalary = persons.withSortedIndex(Person::getSalary);
+
+        assertEquals(Arrays.asList("Alice", "Charlie", "Bob", "Eve", "David"),
+                persons.orderBy(bySalary).select(Person::getName).toList());
+        assertEquals(Arrays.asList("David", "Eve", "Bob", "Charlie", "Alice"),
+                bySalary.descending().select(Person::getName).toList());
+        assertEquals(Arrays.asList("Charlie", "Bob", "Eve"),
+                persons.where(bySalary, 55000.0, 65000.0).select(Person::getName).toList());
+        assertEquals(Arrays.asList("Bob"), bySalary.range(55000.0, false, 65000.0, false).select(Person::getName).toList());
+        assertThrows(IllegalArgumentException.class, () -> bySalary.between(2.0, 1.0));
+
+        persons.add(new Person("Zoe", 40, 58000.0));
+        assertEquals(Arrays.asList("Charlie", "Zoe", "Bob"),
+                bySalary.between(55000.0, 60000.0).select(Person::getName).toList());
+        assertEquals(50000.0, bySalary.firstKey(), 0);
+        assertEquals(70000.0, bySalary.lastKey(), 0);
+    }
+
+    @Test
+    public void testSortedIndexKeysetPagination() {
+        IndexedCollection<Integer> ids = of(IntStream.range(0, 100).map(i -> (i * 37) % 100).boxed()).toIndexedCollection();
+        SortedIndex<Integer, Integer> byId = ids.withSortedIndex(i -> i);
+
+        List<Integer> page1 = byId.ascending().take(10).toList();
+        List<Integer> page2 = byId.after(page1.get(page1.size() - 1)).take(10).toList();
+
+        assertEquals(of(IntStream.range(0, 10).boxed()).toList(), page1);
+        assertEquals(of(IntStream.range(10, 20).boxed()).toList(), page2);
+        assertEquals(Arrays.asList(9, 8, 7), byId.before(10).take(3).toList());
+
+        SortedIndex<Integer, Integer> reversed = ids.withSortedIndex(i -> i, Comparator.reverseOrder());
+        assertEquals(Arrays.asList(99, 98), reversed.ascending().take(2).toList());
+    }
+
+    // ========== 测试 LiveEnumerable 增量视图 ==========
+
+    @Test
+    public void testLiveWhereSelectAndCount() {
+        LiveCollection<Person> persons = getPersonEnumerable().toLiveCollection();
+        LiveEnumerable<String> seniors = persons.where(p -> p.getAge() >= 30).select(Person::getName);
+        LiveAggregate<Person, Boolean, Integer> byAge = persons.countBy(p -> p.getAge() >= 30);
+
+        List<String> log = new ArrayList<>();
+        seniors.subscribe(new LiveListener<String>() {
+            @Override
+            public void inserted(String element) {
+                log.add("+" + element);
+            }
+
+            @Override
+            public void deleted(String element) {
+                log.add("-" + element);
+            }
+        });
+
+        Person zoe = new Person("Zoe", 45, 90000.0);
+        Person kid = new Person("Kid", 10, 0.0);
+        persons.add(zoe).add(kid);
+        assertTrue(persons.update(zoe, new Person("Zoe", 20, 90000.0)));
+        assertTrue(persons.remove(kid));
+        assertFalse(persons.remove(kid));
+
+        assertEquals(Arrays.asList("+Zoe", "-Zoe"), log);
+        assertEquals(seniors.asEnumerable().toList(),
+                getPersonEnumerable().where(p -> p.getAge() >= 30).select(Person::getName).toList());
+        assertEquals(persons.asEnumerable().countBy(p -> p.getAge() >= 30).toList(), byAge.asEnumerable().toList());
+
+        seniors.close();
+        persons.add(zoe);
+        assertEquals(2, log.size());
+    }
+
+    @Test
+    public void testLiveViewsAreMaterialized() {
+        LiveCollection<Integer> numbers = of(Arrays.asList(1, 2, 3, 4)).toLiveCollection();
+        AtomicInteger calls = new AtomicInteger();
+        LiveEnumerable<Integer> evens = numbers.where(i -> i % 2 == 0);
+        LiveEnumerable<Integer> squares = evens.select(i -> {
+            calls.incrementAndGet();
+            return i * i;
+        });
+
+        assertEquals(Arrays.asList(4, 16), squares.asEnumerable().toList());
+        numbers.add(6);
+        assertEquals(Arrays.asList(4, 16, 36), squares.asEnumerable().toList());
+        // 读取视图不会重新计算整个数据源
+        assertEquals(3, calls.get());
+
+        // 关闭链尾的视图会一并释放其上游视图
+        squares.close();
+        numbers.add(8);
+        assertEquals(3, calls.get());
+        assertEquals(Arrays.asList(2, 4, 6), evens.asEnumerable().toList());
+    }
+
+    @Test
+    public void testLiveAggregateAndJoin() {
+        LiveCollection<Person> persons = new LiveCollection<>();
+        LiveCollection<Department> departments = new LiveCollection<>();
+        departments.add(new Department("Senior", 30)).add(new Department("Junior", 20));
+
+        LiveAggregate<Person, Integer, Double> salaryByAge =
+                persons.aggregateBy(Person::getAge, 0.0, (sum, p) -> sum + p.getSalary(), (sum, p) -> sum - p.getSalary());
+        LiveEnumerable<String> matches = persons.join(departments, Person::getAge, Department::getRequiredAge,
+                (p, d) -> p.getName() + "@" + d.getName());
+
+        Person alice = new Person("Alice", 30, 100.0);
+        Person bob = new Person("Bob", 30, 50.0);
+        persons.add(alice).add(bob).add(new Person("Carol", 20, 10.0));
+        assertEquals(150.0, salaryByAge.get(30), 0);
+        assertEquals(Arrays.asList("Alice@Senior", "Bob@Senior", "Carol@Junior"), matches.asEnumerable().orderBy(s -> s).toList());
+
+        persons.remove(alice);
+        departments.add(new Department("Lead", 30));
+        assertEquals(50.0, salaryByAge.get(30), 0);
+        assertEquals(Arrays.asList("Bob@Lead", "Bob@Senior", "Carol@Junior"), matches.asEnumerable().orderBy(s -> s).toList());
+
+        persons.remove(bob);
+        assertNull(salaryByAge.get(30));
+        assertEquals(1, salaryByAge.getSize());
+        assertEquals(Arrays.asList("Carol@Junior"), matches.asEnumerable().toList());
+    }
+
+    // ========== 测试 QueryCache 查询结果缓存 ==========
+
+    @Test
+    public void testQueryCacheHitsAndVersions() {
+        QueryCache cache = new QueryCache(100);
+        AtomicInteger runs = new AtomicInteger();
+        Enumerable<Integer> query = of(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9)).where(i -> runs.incrementAndGet() > 0 && i % 2 == 0);
+
+        assertEquals(Arrays.asList(0, 2, 4, 6, 8), query.cached(cache, "evens", 1).toList());
+        assertEquals(Arrays.asList(0, 2, 4, 6, 8), query.cached(cache, "evens", 1).toList());
+        assertEquals(10, runs.get());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(6, cache.getWeight());
+
+        query.cached(cache, "evens", 2).toList();
+        assertEquals(20, runs.get());
+        assertEquals(2, cache.getSize());
+
+        cache.invalidate("evens");
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getWeight());
+        assertEquals(1.0 / 3, cache.getHitRate(), 1e-9);
+    }
+
+    @Test
+    public void testQueryCacheEviction() {
+        QueryCache cache = new QueryCache(10);
+        cache.getOrPut("a", 0, () -> of(1, 2, 3));
+        cache.getOrPut("b", 0, () -> of(1, 2, 3));
+        cache.getOrPut("a", 0, () -> of(9));
+        cache.getOrPut("c", 0, () -> of(1, 2, 3));
+
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(8, cache.getWeight());
+        assertEquals(Arrays.asList(1, 2, 3), cache.getOrPut("a", 0, () -> of(9)).toList());
+        assertEquals(Arrays.asList(9), cache.getOrPut("b", 0, () -> of(9)).toList());
+        assertEquals(10, cache.getWeight());
+
+        cache.getOrPut("big", 0, () -> of(IntStream.range(0, 10).boxed()));
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(1, cache.getOrPut("big", 0, () -> of(0)).count());
+        assertThrows(IllegalArgumentException.class, () -> new QueryCache(0));
+    }
+
+    @Test
+    public void testQueryCacheEmptyResultsAndLookUps() {
+        QueryCache cache = new QueryCache(100);
+        // 空结果也计入权重，新版本不断写入时仍受预算约束
+        for (int version = 0; version < 1000; version++) {
+            cache.getOrPut("empty", version, () -> of(Collections.<Integer>emptyList()));
+        }
+        assertEquals(100, cache.getSize());
+        assertEquals(100, cache.getWeight());
+
+        cache.clear();
+        LookUp<Integer, Person> byAge = cache.getOrPutLookUp("people", 0, () -> getPersonEnumerable().toLookUp(Person::getAge));
+        assertSame(byAge, cache.getOrPutLookUp("people", 0, () -> getPersonEnumerable().toLookUp(Person::getAge)));
+        // 同一 id 下的列表结果与 LookUp 互不干扰
+        assertEquals(5, cache.getOrPut("people", 0, this::getPersonEnumerable).count());
+        assertSame(byAge, cache.getOrPutLookUp("people", 0, () -> getPersonEnumerable().toLookUp(Person::getAge)));
+    }
 }
\ No newline at end of file
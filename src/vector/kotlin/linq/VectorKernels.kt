@@ -0,0 +1,160 @@
+package linq
+
+import jdk.incubator.vector.DoubleVector
+import jdk.incubator.vector.IntVector
+import jdk.incubator.vector.LongVector
+import jdk.incubator.vector.VectorOperators
+
+private val INTS = IntVector.SPECIES_PREFERRED
+private val LONGS = LongVector.SPECIES_PREFERRED
+private val DOUBLES = DoubleVector.SPECIES_PREFERRED
+
+/**
+ * Reductions over primitive arrays with the Vector API, one register of lanes per step. Arrays shorter than a
+ * register, and the tail past the last full register, go through the scalar loops. Loaded by [ArrayKernels] only
+ * when the `jdk.incubator.vector` module is resolved.
+ */
+internal class VectorKernels : ScalarKernels() {
+    // each int register is widened into two long registers of the same shape, so the sum cannot overflow
+    override fun sum(array: IntArray): Long {
+        var acc = LongVector.zero(LONGS)
+        var i = 0
+        val bound = INTS.loopBound(array.size)
+        while (i < bound) {
+            val v = IntVector.fromArray(INTS, array, i)
+            acc = acc.add(v.convertShape(VectorOperators.I2L, LONGS, 0) as LongVector)
+                .add(v.convertShape(VectorOperators.I2L, LONGS, 1) as LongVector)
+            i += INTS.length()
+        }
+        var sum = acc.reduceLanes(VectorOperators.ADD)
+        while (i < array.size) sum += array[i++]
+        return sum
+    }
+
+    override fun sum(array: LongArray): Long {
+        var acc = LongVector.zero(LONGS)
+        var i = 0
+        val bound = LONGS.loopBound(array.size)
+        while (i < bound) {
+            acc = acc.add(LongVector.fromArray(LONGS, array, i))
+            i += LONGS.length()
+        }
+        var sum = acc.reduceLanes(VectorOperators.ADD)
+        while (i < array.size) sum += array[i++]
+        return sum
+    }
+
+    override fun sum(array: DoubleArray): Double {
+        var acc = DoubleVector.zero(DOUBLES)
+        var i = 0
+        val bound = DOUBLES.loopBound(array.size)
+        while (i < bound) {
+            acc = acc.add(DoubleVector.fromArray(DOUBLES, array, i))
+            i += DOUBLES.length()
+        }
+        var sum = acc.reduceLanes(VectorOperators.ADD)
+        while (i < array.size) sum += array[i++]
+        return sum
+    }
+
+    override fun min(array: IntArray): Int {
+        if (array.size < INTS.length()) return super.min(array)
+        var acc = IntVector.fromArray(INTS, array, 0)
+        var i = INTS.length()
+        val bound = INTS.loopBound(array.size)
+        while (i < bound) {
+            acc = acc.min(IntVector.fromArray(INTS, array, i))
+            i += INTS.length()
+        }
+        var min = acc.reduceLanes(VectorOperators.MIN)
+        while (i < array.size) min = Math.min(min, array[i++])
+        return min
+    }
+
+    override fun max(array: IntArray): Int {
+        if (array.size < INTS.length()) return super.max(array)
+        var acc = IntVector.fromArray(INTS, array, 0)
+        var i = INTS.length()
+        val bound = INTS.loopBound(array.size)
+        while (i < bound) {
+            acc = acc.max(IntVector.fromArray(INTS, array, i))
+            i += INTS.length()
+        }
+        var max = acc.reduceLanes(VectorOperators.MAX)
+        while (i < array.size) max = Math.max(max, array[i++])
+        return max
+    }
+
+    override fun min(array: LongArray): Long {
+        if (array.size < LONGS.length()) return super.min(array)
+        var acc = LongVector.fromArray(LONGS, array, 0)
+        var i = LONGS.length()
+        val bound = LONGS.loopBound(array.size)
+        while (i < bound) {
+            acc = acc.min(LongVector.fromArray(LONGS, array, i))
+            i += LONGS.length()
+        }
+        var min = acc.reduceLanes(VectorOperators.MIN)
+        while (i < array.size) min = Math.min(min, array[i++])
+        return min
+    }
+
+    override fun max(array: LongArray): Long {
+        if (array.size < LONGS.length()) return super.max(array)
+        var acc = LongVector.fromArray(LONGS, array, 0)
+        var i = LONGS.length()
+        val bound = LONGS.loopBound(array.size)
+        while (i < bound) {
+            acc = acc.max(LongVector.fromArray(LONGS, array, i))
+            i += LONGS.length()
+        }
+        var max = acc.reduceLanes(VectorOperators.MAX)
+        while (i < array.size) max = Math.max(max, array[i++])
+        return max
+    }
+
+    // lanewise MIN and MAX follow Math.min and Math.max, so NaN and signed zeros come out as in the scalar loops
+    override fun min(array: DoubleArray): Double {
+        if (array.size < DOUBLES.length()) return super.min(array)
+        var acc = DoubleVector.fromArray(DOUBLES, array, 0)
+        var i = DOUBLES.length()
+        val bound = DOUBLES.loopBound(array.size)
+        while (i < bound) {
+            acc = acc.min(DoubleVector.fromArray(DOUBLES, array, i))
+            i += DOUBLES.length()
+        }
+        var min = acc.reduceLanes(VectorOperators.MIN)
+        while (i < array.size) min = Math.min(min, array[i++])
+        return min
+    }
+
+    override fun max(array: DoubleArray): Double {
+        if (array.size < DOUBLES.length()) return super.max(array)
+        var acc = DoubleVector.fromArray(DOUBLES, array, 0)
+        var i = DOUBLES.length()
+        val bound = DOUBLES.loopBound(array.size)
+        while (i < bound) {
+            acc = acc.max(DoubleVector.fromArray(DOUBLES, array, i))
+            i += DOUBLES.length()
+        }
+        var max = acc.reduceLanes(VectorOperators.MAX)
+        while (i < array.size) max = Math.max(max, array[i++])
+        return max
+    }
+
+    override fun countBetween(array: IntArray, min: Int, max: Int): Int {
+        var count = 0
+        var i = 0
+        val bound = INTS.loopBound(array.size)
+        while (i < bound) {
+            val v = IntVector.fromArray(INTS, array, i)
+            count += v.compare(VectorOperators.GE, min).and(v.compare(VectorOperators.LE, max)).trueCount()
+            i += INTS.length()
+        }
+        while (i < array.size) {
+            val value = array[i++]
+            if (value in min..max) count++
+        }
+        return count
+    }
+}